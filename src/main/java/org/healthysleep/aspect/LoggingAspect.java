@@ -6,6 +6,8 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.healthysleep.exception.InvalidInputException;
+import org.healthysleep.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -38,6 +40,12 @@ public class LoggingAspect {
             throwing = "ex")
     public void logAfterThrowing(JoinPoint joinPoint, Throwable ex) {
         String methodName = joinPoint.getSignature().toShortString();
+        // Ответы клиенту (404, 400), а не сбои: исключение проходит и сервис, и контроллер,
+        // и со стеком на ERROR каждый опрос несуществующего id давал бы две трассы
+        if (ex instanceof ResourceNotFoundException || ex instanceof InvalidInputException) {
+            logger.debug("Method {} rejected the request: {}", methodName, ex.getMessage());
+            return;
+        }
         logger.error("Error in the method: {}, exception: {}\n\t", methodName, ex.getMessage(), ex);
     }
 }
\ No newline at end of file
@@ -1,12 +1,16 @@
 package org.healthysleep.cache;
 
+import java.time.Duration;
 import org.healthysleep.model.Advice;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class AdviceCache extends LfuCache<Advice> {
     
-    public AdviceCache() {
-        super(100);
+    public AdviceCache(@Value("${cache.capacity.advices:524288}") long maxWeightBytes) {
+        super(CacheSpec.<Advice>maximumWeight(maxWeightBytes, EntityWeights::advice)
+                .name("advices")
+                .expireAfterWrite(Duration.ofHours(1)));
     }
-}
\ No newline at end of file
+}
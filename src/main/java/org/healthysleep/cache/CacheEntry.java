@@ -0,0 +1,37 @@
+package org.healthysleep.cache;
+
+final class CacheEntry<T> {
+    final long key;
+    volatile T value;
+    int weight;
+    long writeTime;
+    volatile long accessTime;
+    // Время доступа, с которым запись стоит в очереди доступа
+    long queuedAccessTime;
+
+    FrequencyNode<T> frequencyNode;
+    CacheEntry<T> prev;
+    CacheEntry<T> next;
+
+    CacheEntry<T> prevInWriteOrder;
+    CacheEntry<T> nextInWriteOrder;
+    CacheEntry<T> prevInAccessOrder;
+    CacheEntry<T> nextInAccessOrder;
+
+    CacheEntry(long key, T value, int weight, long now) {
+        this.key = key;
+        this.value = value;
+        this.weight = weight;
+        this.writeTime = now;
+        this.accessTime = now;
+        this.queuedAccessTime = now;
+    }
+
+    int frequency() {
+        return frequencyNode.frequency;
+    }
+
+    boolean isLinked() {
+        return frequencyNode != null;
+    }
+}
@@ -0,0 +1,545 @@
+package org.healthysleep.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Одна полоса LFU-кэша: собственный замок, индекс и списки частот.
+ * Чтение индекса оптимистичное и не берёт замок, а увеличение частоты откладывается
+ * в {@link ReadBuffer} и применяется пачкой под замком.
+ */
+final class CacheSegment<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LfuCache.class);
+
+    // Сколько просроченных записей снимается за одну операцию
+    private static final int EXPIRATION_BATCH = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final LongHashTable<CacheEntry<T>> map;
+    private final ReadBuffer<T> readBuffer = new ReadBuffer<>();
+    private final FrequencySketch sketch;
+    // Меняется только под замком записи
+    private long maximumWeight;
+    private final Weigher<? super T> weigher;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final LongSupplier ticker;
+    private final CacheStats stats;
+    private final ExpirationQueue<T> writeQueue = new ExpirationQueue<>(false);
+    private final ExpirationQueue<T> accessQueue = new ExpirationQueue<>(true);
+
+    // Список частот упорядочен по возрастанию, голова - минимальная частота
+    private FrequencyNode<T> minFrequencyNode;
+    private volatile long weightedSize;
+
+    CacheSegment(long maximumWeight, int expectedEntries, CacheSpec<T> spec, CacheStats stats) {
+        this.maximumWeight = maximumWeight;
+        this.map = new LongHashTable<>(expectedEntries);
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.weigher = spec.getWeigher();
+        this.expireAfterWriteNanos = spec.getExpireAfterWriteNanos();
+        this.expireAfterAccessNanos = spec.getExpireAfterAccessNanos();
+        this.ticker = spec.getTicker();
+        this.stats = stats;
+    }
+
+    T get(long id) {
+        CacheEntry<T> entry = lookup(id);
+        if (entry == null) {
+            logger.debug("Cache miss for key: {}", id);
+            return null;
+        }
+        if (expires()) {
+            long now = ticker.getAsLong();
+            if (isExpired(entry, now)) {
+                logger.debug("Cache miss for expired key: {}", id);
+                return null;
+            }
+            if (expireAfterAccessNanos > 0) {
+                entry.accessTime = now;
+            }
+        }
+        T value = entry.value;
+        if (readBuffer.record(entry)) {
+            long stamp = lock.tryWriteLock();
+            if (stamp != 0L) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+        }
+        logger.debug("Cache hit for key: {}", id);
+        return value;
+    }
+
+    /**
+     * Ищет все ключи за один проход по индексу; отметки о доступе, как и в
+     * {@link #get(long)}, уходят в буфер чтения.
+     */
+    void getAll(long[] ids, Map<Long, T> found) {
+        List<CacheEntry<T>> entries = new ArrayList<>(ids.length);
+        long stamp = lock.tryOptimisticRead();
+        collect(ids, entries);
+        if (!lock.validate(stamp)) {
+            entries.clear();
+            stamp = lock.readLock();
+            try {
+                collect(ids, entries);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        long now = expires() ? ticker.getAsLong() : 0L;
+        boolean drain = false;
+        for (CacheEntry<T> entry : entries) {
+            if (expires() && isExpired(entry, now)) {
+                continue;
+            }
+            if (expireAfterAccessNanos > 0) {
+                entry.accessTime = now;
+            }
+            found.put(entry.key, entry.value);
+            drain |= readBuffer.record(entry);
+        }
+        if (drain) {
+            long writeStamp = lock.tryWriteLock();
+            if (writeStamp != 0L) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    lock.unlockWrite(writeStamp);
+                }
+            }
+        }
+    }
+
+    // Как getAll, но без отметок о доступе: частота и срок по доступу не меняются
+    void peekAll(long[] ids, Map<Long, T> found) {
+        List<CacheEntry<T>> entries = new ArrayList<>(ids.length);
+        long stamp = lock.tryOptimisticRead();
+        collect(ids, entries);
+        if (!lock.validate(stamp)) {
+            entries.clear();
+            stamp = lock.readLock();
+            try {
+                collect(ids, entries);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        long now = expires() ? ticker.getAsLong() : 0L;
+        for (CacheEntry<T> entry : entries) {
+            if (!expires() || !isExpired(entry, now)) {
+                found.put(entry.key, entry.value);
+            }
+        }
+    }
+
+    void put(long id, T value) {
+        int weight = weigher.weigh(value);
+        long stamp = lock.writeLock();
+        try {
+            long now = expires() ? ticker.getAsLong() : 0L;
+            drainReadBuffer();
+            expireEntries(now);
+            putLocked(id, value, weight, now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void putAll(long[] ids, List<T> values) {
+        int[] weights = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            weights[i] = weigher.weigh(values.get(i));
+        }
+        long stamp = lock.writeLock();
+        try {
+            long now = expires() ? ticker.getAsLong() : 0L;
+            drainReadBuffer();
+            expireEntries(now);
+            for (int i = 0; i < ids.length; i++) {
+                putLocked(ids[i], values.get(i), weights[i], now);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Вставляет запись сразу с заданной частотой, не вытесняя других.
+     * Используется при прогреве: ключи приходят по убыванию частоты.
+     */
+    boolean restore(long id, T value, int frequency) {
+        int weight = weigher.weigh(value);
+        long stamp = lock.writeLock();
+        try {
+            if (map.get(id) != null || weightedSize + weight > maximumWeight) {
+                return false;
+            }
+            long now = expires() ? ticker.getAsLong() : 0L;
+            CacheEntry<T> entry = new CacheEntry<>(id, value, weight, now);
+            map.put(id, entry);
+            weightedSize += weight;
+            link(entry, Math.max(1, frequency));
+            // Sketch насыщается на 15, дальше инкременты ничего не дают
+            for (int i = Math.min(frequency, 15); i > 0; i--) {
+                recordAccess(id);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void resize(long maximumWeight) {
+        long stamp = lock.writeLock();
+        try {
+            this.maximumWeight = maximumWeight;
+            drainReadBuffer();
+            while (weightedSize > maximumWeight && minFrequencyNode != null) {
+                evict(minFrequencyNode.head);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void collectKeys(List<KeyFrequency> target) {
+        long stamp = lock.readLock();
+        try {
+            long now = expires() ? ticker.getAsLong() : 0L;
+            for (FrequencyNode<T> node = minFrequencyNode; node != null; node = node.next) {
+                for (CacheEntry<T> entry = node.head; entry != null; entry = entry.next) {
+                    if (!expires() || !isExpired(entry, now)) {
+                        target.add(new KeyFrequency(entry.key, node.frequency));
+                    }
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            CacheEntry<T> entry = map.get(id);
+            if (entry != null) {
+                removeEntry(entry);
+                stats.recordRemoval();
+                logger.debug("Removed key: {}", id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            readBuffer.drainTo(entry -> { });
+            map.clear();
+            writeQueue.clear();
+            accessQueue.clear();
+            minFrequencyNode = null;
+            weightedSize = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long weightedSize() {
+        return weightedSize;
+    }
+
+    private void putLocked(long id, T value, int weight, long now) {
+        recordAccess(id);
+        CacheEntry<T> entry = map.get(id);
+        if (entry != null) {
+            update(entry, value, weight, now);
+            return;
+        }
+        if (weight > maximumWeight) {
+            stats.recordRejection();
+            logger.debug("Cache entry for key: {} exceeds segment weight {}", id, maximumWeight);
+            return;
+        }
+        if (weightedSize + weight > maximumWeight && !evictFor(id, weight)) {
+            stats.recordRejection();
+            logger.debug("Cache admission rejected for key: {}", id);
+            return;
+        }
+        entry = new CacheEntry<>(id, value, weight, now);
+        map.put(id, entry);
+        weightedSize += weight;
+        link(entry, 1);
+        logger.debug("Cache put for key: {}", id);
+    }
+
+    private void collect(long[] ids, List<CacheEntry<T>> entries) {
+        for (long id : ids) {
+            CacheEntry<T> entry = map.get(id);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    private CacheEntry<T> lookup(long id) {
+        long stamp = lock.tryOptimisticRead();
+        CacheEntry<T> entry = map.get(id);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = map.get(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return entry;
+    }
+
+    private boolean expires() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    private boolean isExpired(CacheEntry<T> entry, long now) {
+        return (expireAfterWriteNanos > 0 && now - entry.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - entry.accessTime >= expireAfterAccessNanos);
+    }
+
+    private void update(CacheEntry<T> entry, T value, int weight, long now) {
+        entry.value = value;
+        weightedSize += weight - entry.weight;
+        entry.weight = weight;
+        entry.writeTime = now;
+        entry.accessTime = now;
+        if (expireAfterWriteNanos > 0) {
+            writeQueue.moveToLast(entry);
+        }
+        if (expireAfterAccessNanos > 0) {
+            entry.queuedAccessTime = now;
+            accessQueue.moveToLast(entry);
+        }
+        incrementFrequency(entry);
+        logger.debug("Cache update for key: {}", entry.key);
+        while (weightedSize > maximumWeight && minFrequencyNode != null) {
+            evict(minFrequencyNode.head);
+        }
+    }
+
+    /**
+     * Снимает с голов очередей не больше {@link #EXPIRATION_BATCH} записей,
+     * чтобы стоимость очистки распределялась по обычным операциям.
+     */
+    private void expireEntries(long now) {
+        int budget = EXPIRATION_BATCH;
+        if (expireAfterWriteNanos > 0) {
+            CacheEntry<T> entry = writeQueue.peek();
+            while (budget > 0 && entry != null && now - entry.writeTime >= expireAfterWriteNanos) {
+                removeEntry(entry);
+                stats.recordExpiration();
+                logger.debug("Expired key: {}", entry.key);
+                budget--;
+                entry = writeQueue.peek();
+            }
+        }
+        if (expireAfterAccessNanos > 0) {
+            CacheEntry<T> entry = accessQueue.peek();
+            while (budget > 0 && entry != null) {
+                long accessTime = entry.accessTime;
+                if (now - accessTime >= expireAfterAccessNanos) {
+                    removeEntry(entry);
+                    stats.recordExpiration();
+                    logger.debug("Expired key: {}", entry.key);
+                } else if (accessTime != entry.queuedAccessTime) {
+                    // Отметка о доступе потерялась в буфере, запись стоит не на своём месте
+                    entry.queuedAccessTime = accessTime;
+                    accessQueue.moveToLast(entry);
+                } else {
+                    break;
+                }
+                budget--;
+                entry = accessQueue.peek();
+            }
+        }
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(entry -> {
+            // Запись могла быть вытеснена, пока отметка лежала в буфере
+            if (entry.isLinked()) {
+                recordAccess(entry.key);
+                incrementFrequency(entry);
+                if (expireAfterAccessNanos > 0) {
+                    entry.queuedAccessTime = entry.accessTime;
+                    accessQueue.moveToLast(entry);
+                }
+            }
+        });
+    }
+
+    private void recordAccess(long id) {
+        if (sketch.increment(id)) {
+            ageFrequencies();
+        }
+    }
+
+    /**
+     * TinyLFU: новый ключ вытесняет жертву, только если по оценке sketch
+     * он запрашивается чаще неё. Иначе однократные ключи при полном сканировании
+     * вымывали бы рабочий набор. Если кандидат допущен, вытесняется столько
+     * наименее используемых записей, сколько нужно для его веса.
+     */
+    private boolean evictFor(long candidate, int weight) {
+        if (minFrequencyNode == null) {
+            return true;
+        }
+        // Внутри одной частоты жертвой становится самая старая запись
+        CacheEntry<T> victim = minFrequencyNode.head;
+        if (sketch.frequency(candidate) <= sketch.frequency(victim.key)) {
+            return false;
+        }
+        while (weightedSize + weight > maximumWeight && minFrequencyNode != null) {
+            evict(minFrequencyNode.head);
+        }
+        return true;
+    }
+
+    private void evict(CacheEntry<T> victim) {
+        removeEntry(victim);
+        stats.recordEviction();
+        logger.debug("Evicted key: {}", victim.key);
+    }
+
+    private void removeEntry(CacheEntry<T> entry) {
+        if (map.get(entry.key) == entry) {
+            map.remove(entry.key);
+        }
+        weightedSize -= entry.weight;
+        detach(entry);
+        if (expireAfterWriteNanos > 0) {
+            writeQueue.remove(entry);
+        }
+        if (expireAfterAccessNanos > 0) {
+            accessQueue.remove(entry);
+        }
+    }
+
+    /**
+     * Делит частоты записей пополам вместе со старением sketch, сливая узлы,
+     * которые получили одинаковую частоту. Порядок узлов при этом сохраняется.
+     */
+    private void ageFrequencies() {
+        FrequencyNode<T> previous = null;
+        FrequencyNode<T> node = minFrequencyNode;
+        while (node != null) {
+            FrequencyNode<T> next = node.next;
+            int halved = Math.max(1, node.frequency >>> 1);
+            if (previous != null && previous.frequency == halved) {
+                for (CacheEntry<T> entry = node.head; entry != null; entry = entry.next) {
+                    entry.frequencyNode = previous;
+                }
+                previous.tail.next = node.head;
+                node.head.prev = previous.tail;
+                previous.tail = node.tail;
+                previous.next = next;
+                if (next != null) {
+                    next.prev = previous;
+                }
+            } else {
+                node.frequency = halved;
+                previous = node;
+            }
+            node = next;
+        }
+    }
+
+    private void link(CacheEntry<T> entry, int frequency) {
+        nodeFor(frequency).addLast(entry);
+        if (expireAfterWriteNanos > 0) {
+            writeQueue.addLast(entry);
+        }
+        if (expireAfterAccessNanos > 0) {
+            accessQueue.addLast(entry);
+        }
+    }
+
+    // Обычно нужен узел с частотой 1 в голове списка, поэтому обход короткий
+    private FrequencyNode<T> nodeFor(int frequency) {
+        FrequencyNode<T> previous = null;
+        FrequencyNode<T> node = minFrequencyNode;
+        while (node != null && node.frequency < frequency) {
+            previous = node;
+            node = node.next;
+        }
+        if (node != null && node.frequency == frequency) {
+            return node;
+        }
+        FrequencyNode<T> created = new FrequencyNode<>(frequency);
+        created.prev = previous;
+        created.next = node;
+        if (node != null) {
+            node.prev = created;
+        }
+        if (previous == null) {
+            minFrequencyNode = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void incrementFrequency(CacheEntry<T> entry) {
+        FrequencyNode<T> current = entry.frequencyNode;
+        FrequencyNode<T> next = current.next;
+        if (next == null || next.frequency != current.frequency + 1) {
+            next = new FrequencyNode<>(current.frequency + 1);
+            next.prev = current;
+            next.next = current.next;
+            if (current.next != null) {
+                current.next.prev = next;
+            }
+            current.next = next;
+        }
+        current.unlink(entry);
+        next.addLast(entry);
+        if (current.isEmpty()) {
+            removeFrequencyNode(current);
+        }
+    }
+
+    private void detach(CacheEntry<T> entry) {
+        FrequencyNode<T> node = entry.frequencyNode;
+        node.unlink(entry);
+        if (node.isEmpty()) {
+            removeFrequencyNode(node);
+        }
+    }
+
+    private void removeFrequencyNode(FrequencyNode<T> node) {
+        if (node.prev == null) {
+            minFrequencyNode = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,62 @@
+package org.healthysleep.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Двоичный снимок ключей кэша для тёплого перезапуска: заголовок, число записей
+ * и пары (ключ, частота) по убыванию частоты. Значения не сохраняются - после
+ * старта они перечитываются из базы, поэтому снимок не может быть устаревшим по данным.
+ */
+public final class CacheSnapshots {
+
+    private static final int MAGIC = 0x4C465553;
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 1 << 24;
+
+    private CacheSnapshots() {
+    }
+
+    public static void write(Path file, List<KeyFrequency> keys) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            for (KeyFrequency key : keys) {
+                out.writeLong(key.key());
+                out.writeInt(key.frequency());
+            }
+        }
+        // Читатель видит либо прежний снимок, либо новый целиком
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static List<KeyFrequency> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported cache snapshot format: " + file);
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ENTRIES) {
+                throw new IOException("Corrupted cache snapshot: " + file);
+            }
+            List<KeyFrequency> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(new KeyFrequency(in.readLong(), in.readInt()));
+            }
+            return keys;
+        }
+    }
+}
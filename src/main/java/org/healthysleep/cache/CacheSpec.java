@@ -0,0 +1,116 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Параметры {@link LfuCache}: ограничение по числу записей или по оценочному весу,
+ * время жизни после записи и после последнего доступа.
+ */
+public final class CacheSpec<T> {
+
+    // Средний вес записи, по которому оценивается их число при ограничении по весу
+    private static final int DEFAULT_ENTRY_WEIGHT = 256;
+
+    private final long maximumWeight;
+    private final Weigher<? super T> weigher;
+    private final boolean weighted;
+    private String name;
+    private long expireAfterWriteNanos;
+    private long expireAfterAccessNanos;
+    private int concurrencyLevel = Runtime.getRuntime().availableProcessors();
+    private int expectedEntries;
+    private LongSupplier ticker = System::nanoTime;
+
+    private CacheSpec(long maximumWeight, Weigher<? super T> weigher, boolean weighted) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.weighted = weighted;
+        this.expectedEntries = (int) Math.min(Integer.MAX_VALUE,
+                weighted ? Math.max(1, maximumWeight / DEFAULT_ENTRY_WEIGHT) : maximumWeight);
+    }
+
+    public static <T> CacheSpec<T> maximumSize(int maximumSize) {
+        return new CacheSpec<>(maximumSize, Weigher.singleton(), false);
+    }
+
+    public static <T> CacheSpec<T> maximumWeight(long maximumWeight, Weigher<? super T> weigher) {
+        return new CacheSpec<>(maximumWeight, weigher, true);
+    }
+
+    public CacheSpec<T> name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public CacheSpec<T> expireAfterWrite(Duration duration) {
+        this.expireAfterWriteNanos = toNanos(duration);
+        return this;
+    }
+
+    public CacheSpec<T> expireAfterAccess(Duration duration) {
+        this.expireAfterAccessNanos = toNanos(duration);
+        return this;
+    }
+
+    public CacheSpec<T> concurrencyLevel(int concurrencyLevel) {
+        this.concurrencyLevel = Math.max(1, concurrencyLevel);
+        return this;
+    }
+
+    public CacheSpec<T> expectedEntries(int expectedEntries) {
+        this.expectedEntries = Math.max(1, expectedEntries);
+        return this;
+    }
+
+    CacheSpec<T> ticker(LongSupplier ticker) {
+        this.ticker = ticker;
+        return this;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    Weigher<? super T> getWeigher() {
+        return weigher;
+    }
+
+    boolean isWeighted() {
+        return weighted;
+    }
+
+    long getExpireAfterWriteNanos() {
+        return expireAfterWriteNanos;
+    }
+
+    long getExpireAfterAccessNanos() {
+        return expireAfterAccessNanos;
+    }
+
+    int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    int getExpectedEntries() {
+        return expectedEntries;
+    }
+
+    LongSupplier getTicker() {
+        return ticker;
+    }
+
+    private static long toNanos(Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Expiration must be positive");
+        }
+        return duration.toNanos();
+    }
+}
@@ -0,0 +1,73 @@
+package org.healthysleep.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики одного именованного кэша. Обновляются без блокировок и без логирования.
+ */
+public final class CacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+
+    void recordGet(boolean hit, long nanos) {
+        (hit ? hits : misses).increment();
+        getLatency.record(nanos);
+    }
+
+    void recordPut(long nanos) {
+        puts.increment();
+        putLatency.record(nanos);
+    }
+
+    // Для пакетных операций в гистограмму идёт средняя задержка на ключ
+    void recordGetAll(int hitCount, int missCount, long nanos) {
+        hits.add(hitCount);
+        misses.add(missCount);
+        getLatency.record(nanos / Math.max(1, hitCount + missCount));
+    }
+
+    void recordPutAll(int count, long nanos) {
+        puts.add(count);
+        putLatency.record(nanos / Math.max(1, count));
+    }
+
+    void recordRejection() {
+        rejections.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordExpiration() {
+        expirations.increment();
+    }
+
+    void recordRemoval() {
+        removals.increment();
+    }
+
+    Snapshot snapshot(String name, int size, long weightedSize, long maxCapacity) {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        double hitRatio = requests == 0 ? 0 : (double) hitCount / requests;
+        return new Snapshot(name, hitCount, missCount, hitRatio, puts.sum(), rejections.sum(),
+                evictions.sum(), expirations.sum(), removals.sum(), size, weightedSize, maxCapacity,
+                getLatency.snapshot(), putLatency.snapshot());
+    }
+
+    public record Snapshot(String name, long hits, long misses, double hitRatio, long puts,
+                           long rejections, long evictions, long expirations, long removals,
+                           int size, long weightedSize, long maxCapacity,
+                           LatencyHistogram.Snapshot getLatency,
+                           LatencyHistogram.Snapshot putLatency) {}
+}
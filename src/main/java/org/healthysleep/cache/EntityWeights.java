@@ -0,0 +1,59 @@
+package org.healthysleep.cache;
+
+import java.util.Collection;
+import org.healthysleep.model.Advice;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.User;
+import org.hibernate.Hibernate;
+
+/**
+ * Грубая оценка занимаемой сущностями памяти в байтах для ограничения кэшей по весу.
+ */
+final class EntityWeights {
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE = 8;
+    private static final int LOCAL_DATE_TIME = 72;
+    private static final int ADVICE_BASE = OBJECT_OVERHEAD + 3 * REFERENCE + 4 + 24;
+    private static final int BOXED_LONG = 24;
+    // Заглушка снимка: объект с одним id, остальные поля пусты
+    private static final int SESSION_STUB = OBJECT_OVERHEAD + 3 * REFERENCE + BOXED_LONG;
+    private static final int SESSION = SESSION_STUB + 2 * LOCAL_DATE_TIME;
+    private static final int USER_BASE = OBJECT_OVERHEAD + 7 * REFERENCE + 24;
+    private static final int COLLECTION_ENTRY = 32;
+
+    private EntityWeights() {
+    }
+
+    static int advice(Advice advice) {
+        return ADVICE_BASE + string(advice.getAdvice());
+    }
+
+    static int session(Session session) {
+        return SESSION;
+    }
+
+    static int user(User user) {
+        int weight = USER_BASE + string(user.getUsername()) + string(user.getEmail())
+                + string(user.getPassword()) + string(user.getRole());
+        // В UserCache лежат снимки (UserSnapshots): коллекции в них - заглушки с одним id.
+        // У заглушки совета нет текста, поэтому её вес - вес совета без строки
+        if (isLoaded(user.getSleepSessions())) {
+            weight += user.getSleepSessions().size() * (SESSION_STUB + COLLECTION_ENTRY);
+        }
+        if (isLoaded(user.getSleepAdvices())) {
+            for (Advice advice : user.getSleepAdvices()) {
+                weight += advice(advice) + COLLECTION_ENTRY;
+            }
+        }
+        return weight;
+    }
+
+    private static boolean isLoaded(Collection<?> collection) {
+        return collection != null && Hibernate.isInitialized(collection);
+    }
+
+    private static int string(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
+}
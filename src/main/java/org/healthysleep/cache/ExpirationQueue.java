@@ -0,0 +1,88 @@
+package org.healthysleep.cache;
+
+/**
+ * Двусвязная очередь записей в порядке записи или в порядке доступа.
+ * Голова очереди истекает первой, поэтому просроченные записи снимаются с неё
+ * небольшими порциями без полного обхода сегмента.
+ */
+final class ExpirationQueue<T> {
+
+    private final boolean accessOrder;
+    private CacheEntry<T> head;
+    private CacheEntry<T> tail;
+
+    ExpirationQueue(boolean accessOrder) {
+        this.accessOrder = accessOrder;
+    }
+
+    CacheEntry<T> peek() {
+        return head;
+    }
+
+    void addLast(CacheEntry<T> entry) {
+        setPrev(entry, tail);
+        setNext(entry, null);
+        if (tail == null) {
+            head = entry;
+        } else {
+            setNext(tail, entry);
+        }
+        tail = entry;
+    }
+
+    void remove(CacheEntry<T> entry) {
+        CacheEntry<T> prev = prevOf(entry);
+        CacheEntry<T> next = nextOf(entry);
+        if (prev == null) {
+            if (head != entry) {
+                return;
+            }
+            head = next;
+        } else {
+            setNext(prev, next);
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            setPrev(next, prev);
+        }
+        setPrev(entry, null);
+        setNext(entry, null);
+    }
+
+    void moveToLast(CacheEntry<T> entry) {
+        if (tail != entry) {
+            remove(entry);
+            addLast(entry);
+        }
+    }
+
+    void clear() {
+        head = null;
+        tail = null;
+    }
+
+    private CacheEntry<T> prevOf(CacheEntry<T> entry) {
+        return accessOrder ? entry.prevInAccessOrder : entry.prevInWriteOrder;
+    }
+
+    private CacheEntry<T> nextOf(CacheEntry<T> entry) {
+        return accessOrder ? entry.nextInAccessOrder : entry.nextInWriteOrder;
+    }
+
+    private void setPrev(CacheEntry<T> entry, CacheEntry<T> prev) {
+        if (accessOrder) {
+            entry.prevInAccessOrder = prev;
+        } else {
+            entry.prevInWriteOrder = prev;
+        }
+    }
+
+    private void setNext(CacheEntry<T> entry, CacheEntry<T> next) {
+        if (accessOrder) {
+            entry.nextInAccessOrder = next;
+        } else {
+            entry.nextInWriteOrder = next;
+        }
+    }
+}
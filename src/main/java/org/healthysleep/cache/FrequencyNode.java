@@ -0,0 +1,45 @@
+package org.healthysleep.cache;
+
+final class FrequencyNode<T> {
+    int frequency;
+    FrequencyNode<T> prev;
+    FrequencyNode<T> next;
+    CacheEntry<T> head;
+    CacheEntry<T> tail;
+
+    FrequencyNode(int frequency) {
+        this.frequency = frequency;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    void addLast(CacheEntry<T> entry) {
+        entry.frequencyNode = this;
+        entry.prev = tail;
+        entry.next = null;
+        if (tail == null) {
+            head = entry;
+        } else {
+            tail.next = entry;
+        }
+        tail = entry;
+    }
+
+    void unlink(CacheEntry<T> entry) {
+        if (entry.prev == null) {
+            head = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next == null) {
+            tail = entry.prev;
+        } else {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.frequencyNode = null;
+    }
+}
@@ -0,0 +1,31 @@
+package org.healthysleep.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Доставка внутри одной JVM: все шины, подключённые к одному экземпляру,
+ * получают пачки синхронно. Подходит для одного узла и для тестов.
+ */
+public class InProcessInvalidationTransport implements InvalidationTransport {
+
+    private final List<Consumer<InvalidationBatch>> receivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void send(InvalidationBatch batch) {
+        for (Consumer<InvalidationBatch> receiver : receivers) {
+            receiver.accept(batch);
+        }
+    }
+
+    @Override
+    public void start(Consumer<InvalidationBatch> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void close() {
+        receivers.clear();
+    }
+}
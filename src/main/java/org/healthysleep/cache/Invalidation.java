@@ -0,0 +1,7 @@
+package org.healthysleep.cache;
+
+/**
+ * Сообщение о том, что запись {@code id} кэша {@code cache} устарела на других узлах.
+ */
+public record Invalidation(String cache, long id) {
+}
@@ -0,0 +1,46 @@
+package org.healthysleep.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пачка инвалидаций одного узла. {@code origin} нужен, чтобы узел не сбрасывал
+ * собственные, только что обновлённые записи, получив свою же рассылку.
+ */
+public record InvalidationBatch(long origin, List<Invalidation> invalidations) {
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + invalidations.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(origin);
+            out.writeInt(invalidations.size());
+            for (Invalidation invalidation : invalidations) {
+                out.writeUTF(invalidation.cache());
+                out.writeLong(invalidation.id());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static InvalidationBatch decode(byte[] data, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+        long origin = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > length) {
+            throw new IOException("Corrupted invalidation batch");
+        }
+        List<Invalidation> invalidations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            invalidations.add(new Invalidation(in.readUTF(), in.readLong()));
+        }
+        return new InvalidationBatch(origin, invalidations);
+    }
+}
@@ -0,0 +1,156 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Шина инвалидаций между узлами. Публикации копятся и уходят пачкой, когда их
+ * набралось {@code batchSize} или истёк {@code flushInterval}. Полученные пачки
+ * применяются подписчиками по имени кэша; свои пачки узел пропускает. Отправка по
+ * интервалу и приём начинаются с {@link #start()}, когда подписчики уже добавлены.
+ */
+public class InvalidationBus implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+    // Очистка всего кэша идёт отдельным каналом с этим префиксом, формат пачек прежний
+    private static final String CLEAR_PREFIX = "clear:";
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final InvalidationTransport transport;
+    private final int batchSize;
+    private final Map<String, List<LongConsumer>> listeners = new ConcurrentHashMap<>();
+    private final List<Runnable> receiveListeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Invalidation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final long flushIntervalNanos;
+    private final ScheduledExecutorService flusher;
+
+    public InvalidationBus(InvalidationTransport transport, int batchSize, Duration flushInterval) {
+        this.transport = transport;
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushIntervalNanos = flushInterval.toNanos();
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+        transport.start(this::receive);
+    }
+
+    public void register(LfuCache<?> cache) {
+        subscribe(cache.getName(), cache::remove);
+    }
+
+    public void subscribe(String cacheName, LongConsumer listener) {
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void subscribeClear(String cacheName, Runnable listener) {
+        subscribe(CLEAR_PREFIX + cacheName, id -> listener.run());
+    }
+
+    // Вызывается на каждую полученную с другого узла пачку
+    public void onReceive(Runnable listener) {
+        receiveListeners.add(listener);
+    }
+
+    /**
+     * Внутри транзакции инвалидация откладывается до коммита: иначе другой узел
+     * успел бы перечитать из базы ещё старое значение.
+     */
+    public void publish(String cacheName, long id) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(cacheName, id);
+                }
+            });
+        } else {
+            enqueue(cacheName, id);
+        }
+    }
+
+    public void publishClear(String cacheName) {
+        publish(CLEAR_PREFIX + cacheName, 0);
+    }
+
+    private void enqueue(String cacheName, long id) {
+        pending.add(new Invalidation(cacheName, id));
+        if (pendingCount.incrementAndGet() >= batchSize) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    public void flush() {
+        List<Invalidation> batch = new ArrayList<>(batchSize);
+        Invalidation invalidation;
+        while ((invalidation = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(invalidation);
+            if (batch.size() == batchSize) {
+                send(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        transport.close();
+    }
+
+    private void send(List<Invalidation> batch) {
+        try {
+            transport.send(new InvalidationBatch(nodeId, batch));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish {} invalidations: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void receive(InvalidationBatch batch) {
+        if (batch.origin() == nodeId) {
+            return;
+        }
+        receiveListeners.forEach(Runnable::run);
+        for (Invalidation invalidation : batch.invalidations()) {
+            List<LongConsumer> cacheListeners = listeners.get(invalidation.cache());
+            if (cacheListeners != null) {
+                for (LongConsumer listener : cacheListeners) {
+                    listener.accept(invalidation.id());
+                }
+            }
+        }
+        logger.debug("Applied {} invalidations", batch.invalidations().size());
+    }
+}
@@ -0,0 +1,16 @@
+package org.healthysleep.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Способ доставки пачек инвалидаций между узлами для {@link InvalidationBus}.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    void send(InvalidationBatch batch);
+
+    void start(Consumer<InvalidationBatch> receiver);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,7 @@
+package org.healthysleep.cache;
+
+/**
+ * Ключ кэша и его частота в LFU-порядке на момент снятия снимка.
+ */
+public record KeyFrequency(long key, int frequency) {
+}
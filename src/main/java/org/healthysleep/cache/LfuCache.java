@@ -1,82 +1,294 @@
 package org.healthysleep.cache;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class LfuCache<T> {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(LfuCache.class);
 
-    private final int maxCapacity;
-    private final Map<Long, CacheEntry<T>> cache = new HashMap<>();
+    // Меньше этого числа записей на полосу LFU-порядок становится слишком грубым
+    private static final int MIN_SEGMENT_ENTRIES = 32;
+
+    private final String name;
+    private volatile long maxCapacity;
+    private final CacheStats stats = new CacheStats();
+    private final CacheSegment<T>[] segments;
+    private final int segmentMask;
+    // Загрузки, которые сейчас выполняются: остальные промахи по ключу ждут их результата
+    private final ConcurrentHashMap<Long, CompletableFuture<T>> loads = new ConcurrentHashMap<>();
+
+    protected LfuCache(int maxCapacity) {
+        this(CacheSpec.maximumSize(maxCapacity));
+    }
 
-    protected static class CacheEntry<T> {
-        T value;
-        int frequency;
+    protected LfuCache(int maxCapacity, int concurrencyLevel) {
+        this(CacheSpec.<T>maximumSize(maxCapacity).concurrencyLevel(concurrencyLevel));
+    }
 
-        CacheEntry(T value) {
-            this.value = value;
-            this.frequency = 1;
+    @SuppressWarnings("unchecked")
+    protected LfuCache(CacheSpec<T> spec) {
+        this.name = spec.getName() != null ? spec.getName() : getClass().getSimpleName();
+        this.maxCapacity = spec.getMaximumWeight();
+        int segmentCount = segmentCount(spec.getExpectedEntries(), spec.getConcurrencyLevel());
+        this.segments = (CacheSegment<T>[]) new CacheSegment<?>[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            long weightShare = share(maxCapacity, segmentCount, i);
+            int entriesShare = (int) share(spec.getExpectedEntries(), segmentCount, i);
+            segments[i] = new CacheSegment<>(weightShare, entriesShare, spec, stats);
         }
+        logger.info("LFUCache '{}' initialized with max {}: {}, segments: {}", name,
+                spec.isWeighted() ? "weight" : "capacity", maxCapacity, segmentCount);
     }
 
-    protected LfuCache(int maxCapacity) {
-        this.maxCapacity = maxCapacity;
-        logger.info("LFUCache initialized with max capacity: " + maxCapacity);
-    }
-
-    public synchronized T get(Long id) {
-        CacheEntry<T> entry = cache.get(id);
-        if (entry != null) {
-            entry.frequency++;
-            logger.info("Cache hit for key: " + id + ", frequency: " + entry.frequency);
-            return entry.value;
-        }
-        logger.info("Cache miss for key: " + id);
-        return null;
-    }
-
-    public synchronized void put(Long id, T value) {
-        if (cache.containsKey(id)) {
-            CacheEntry<T> entry = cache.get(id);
-            entry.value = value;
-            entry.frequency++;
-            logger.info("Cache update for key: " + id + ", frequency: " + entry.frequency);
-        } else {
-            if (cache.size() >= maxCapacity) {
-                logger.info("Cache is full, evicting least frequently used entry");
-                evictLeastFrequentlyUsed();
+    public T get(long id) {
+        long start = System.nanoTime();
+        T value = segmentFor(id).get(id);
+        stats.recordGet(value != null, System.nanoTime() - start);
+        return value;
+    }
+
+    // Прочитанное с отстающей реплики не кэшируется: см. StaleReads
+    public void put(long id, T value) {
+        if (StaleReads.inCurrentTransaction()) {
+            return;
+        }
+        long start = System.nanoTime();
+        segmentFor(id).put(id, value);
+        stats.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * Найденные в кэше значения; отсутствующих ключей в результате нет.
+     * Каждая полоса просматривается один раз за весь набор.
+     */
+    public Map<Long, T> getAll(Collection<Long> ids) {
+        long start = System.nanoTime();
+        long[] keys = ids.stream().mapToLong(Long::longValue).distinct().toArray();
+        Map<Long, T> found = new HashMap<>(keys.length * 2);
+        long[][] grouped = groupBySegment(keys);
+        for (int i = 0; i < segments.length; i++) {
+            if (grouped[i].length > 0) {
+                segments[i].getAll(grouped[i], found);
+            }
+        }
+        stats.recordGetAll(found.size(), keys.length - found.size(), System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Найденные в кэше значения без учёта обращения: частота записей, срок по доступу
+     * и статистика попаданий не меняются. Для проверок перед записью, а не для чтения.
+     */
+    public Map<Long, T> peekAll(Collection<Long> ids) {
+        long[] keys = ids.stream().mapToLong(Long::longValue).distinct().toArray();
+        Map<Long, T> found = new HashMap<>(keys.length * 2);
+        long[][] grouped = groupBySegment(keys);
+        for (int i = 0; i < segments.length; i++) {
+            if (grouped[i].length > 0) {
+                segments[i].peekAll(grouped[i], found);
+            }
+        }
+        return found;
+    }
+
+    public void putAll(Map<Long, ? extends T> values) {
+        if (StaleReads.inCurrentTransaction()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long[] keys = values.keySet().stream().mapToLong(Long::longValue).toArray();
+        long[][] grouped = groupBySegment(keys);
+        for (int i = 0; i < segments.length; i++) {
+            if (grouped[i].length > 0) {
+                List<T> segmentValues = new ArrayList<>(grouped[i].length);
+                for (long key : grouped[i]) {
+                    segmentValues.add(values.get(key));
+                }
+                segments[i].putAll(grouped[i], segmentValues);
+            }
+        }
+        stats.recordPutAll(keys.length, System.nanoTime() - start);
+    }
+
+    /**
+     * Возвращает значение из кэша, а при промахе вызывает {@code loader} и кэширует результат.
+     * На один ключ одновременно выполняется только одна загрузка; остальные вызовы
+     * дожидаются её и получают то же значение или то же исключение. Если ключ сброшен
+     * через {@link #remove(long)} или {@link #clear()} во время загрузки, загруженное
+     * значение возвращается вызывающим, но в кэше не остаётся: оно могло быть прочитано
+     * до изменения, из-за которого ключ сбросили.
+     */
+    public T getOrLoad(long id, LongFunction<? extends T> loader) {
+        T value = get(id);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> running = loads.putIfAbsent(id, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Между промахом и захватом ключа значение могла положить завершившаяся загрузка
+            T current = segmentFor(id).get(id);
+            if (current != null) {
+                load.complete(current);
+                return current;
             }
-            cache.put(id, new CacheEntry<>(value));
-            logger.info("Cache put for key: " + id + ", frequency: 1");
+            T loaded = loader.apply(id);
+            if (loaded != null) {
+                put(id, loaded);
+                // remove и clear снимают загрузку до сброса записи, поэтому либо мы видим
+                // снятие здесь, либо их сброс выполняется после нашей записи
+                if (loads.get(id) != load) {
+                    segmentFor(id).remove(id);
+                }
+            }
+            load.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
+        }
+    }
+
+    public void remove(long id) {
+        loads.remove(id);
+        segmentFor(id).remove(id);
+    }
+
+    /**
+     * Помещает значение с восстановленной частотой, если для него есть место.
+     * В отличие от {@link #put(long, Object)} ничего не вытесняет.
+     */
+    public boolean restore(long id, T value, int frequency) {
+        return segmentFor(id).restore(id, value, frequency);
+    }
+
+    /**
+     * Ключи всех полос по убыванию частоты, не больше {@code limit}.
+     */
+    public List<KeyFrequency> hottestKeys(int limit) {
+        List<KeyFrequency> keys = new ArrayList<>(size());
+        for (CacheSegment<T> segment : segments) {
+            segment.collectKeys(keys);
+        }
+        keys.sort(Comparator.comparingInt(KeyFrequency::frequency).reversed());
+        return keys.size() > limit ? new ArrayList<>(keys.subList(0, limit)) : keys;
+    }
+
+    /**
+     * Меняет ограничение на ходу. При уменьшении лишние записи вытесняются сразу,
+     * начиная с наименее используемых. Размер sketch остаётся прежним.
+     */
+    public void resize(long maxCapacity) {
+        if (maxCapacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.maxCapacity = maxCapacity;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].resize(share(maxCapacity, segments.length, i));
+        }
+        logger.info("Cache '{}' resized to {}", name, maxCapacity);
+    }
+
+    public void clear() {
+        loads.clear();
+        for (CacheSegment<T> segment : segments) {
+            segment.clear();
+        }
+        logger.info("Cache '{}' cleared", name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheStats.Snapshot stats() {
+        return stats.snapshot(name, size(), weightedSize(), maxCapacity);
+    }
+
+    public int size() {
+        int size = 0;
+        for (CacheSegment<T> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weightedSize() {
+        long weightedSize = 0;
+        for (CacheSegment<T> segment : segments) {
+            weightedSize += segment.weightedSize();
         }
+        return weightedSize;
     }
 
-    private void evictLeastFrequentlyUsed() {
-        Long lfuKey = null;
-        int minFrequency = Integer.MAX_VALUE;
+    public long getMaxCapacity() {
+        return maxCapacity;
+    }
 
-        for (Map.Entry<Long, CacheEntry<T>> entry : cache.entrySet()) {
-            if (entry.getValue().frequency < minFrequency) {
-                minFrequency = entry.getValue().frequency;
-                lfuKey = entry.getKey();
+    private static <T> T await(CompletableFuture<T> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
             }
+            throw e;
+        }
+    }
+
+    private CacheSegment<T> segmentFor(long id) {
+        return segments[segmentIndex(id)];
+    }
+
+    private int segmentIndex(long id) {
+        int hash = Long.hashCode(id) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & segmentMask;
+    }
+
+    private long[][] groupBySegment(long[] keys) {
+        int[] counts = new int[segments.length];
+        for (long key : keys) {
+            counts[segmentIndex(key)]++;
+        }
+        long[][] grouped = new long[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            grouped[i] = new long[counts[i]];
+            counts[i] = 0;
         }
-        if (lfuKey != null) {
-            cache.remove(lfuKey);
-            logger.info("Evicted key: " + lfuKey + " with frequency: " + minFrequency);
+        for (long key : keys) {
+            int index = segmentIndex(key);
+            grouped[index][counts[index]++] = key;
         }
+        return grouped;
     }
 
-    public synchronized void remove(Long id) {
-        cache.remove(id);
-        logger.info("Removed key: " + id);
+    private static long share(long total, int parts, int index) {
+        return total / parts + (index < total % parts ? 1 : 0);
     }
 
-    public synchronized void clear() {
-        cache.clear();
-        logger.info("Cache cleared");
+    private static int segmentCount(int expectedEntries, int concurrencyLevel) {
+        int byEntries = Math.max(1, expectedEntries / MIN_SEGMENT_ENTRIES);
+        int count = Math.max(1, Math.min(concurrencyLevel, byEntries));
+        return Integer.highestOneBit(count);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package org.healthysleep.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * {@link CacheManager} с именованными LFU-кэшами для {@code @Cacheable} и родственных
+ * аннотаций. Набор кэшей фиксирован конфигурацией: обращение к неизвестному имени
+ * - ошибка, а не молча созданный кэш без ограничений. С шиной инвалидаций
+ * {@code @CacheEvict} действует на всех узлах, без неё - только на этом.
+ */
+public class LfuCacheManager implements CacheManager {
+
+    private final Map<String, LfuSpringCache> caches = new LinkedHashMap<>();
+
+    public LfuCacheManager(Map<String, CacheSpec<Object>> specs) {
+        this(specs, null);
+    }
+
+    public LfuCacheManager(Map<String, CacheSpec<Object>> specs, InvalidationBus invalidationBus) {
+        specs.forEach((name, spec) -> {
+            LfuCache<Object> cache = new LfuCache<>(spec.name(name)) {
+            };
+            if (invalidationBus != null) {
+                invalidationBus.register(cache);
+                invalidationBus.subscribeClear(name, cache::clear);
+            }
+            caches.put(name, new LfuSpringCache(cache, invalidationBus));
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.get(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    public List<LfuCache<?>> getNativeCaches() {
+        List<LfuCache<?>> nativeCaches = new ArrayList<>();
+        for (LfuSpringCache cache : caches.values()) {
+            nativeCaches.add(cache.getNativeCache());
+        }
+        return nativeCaches;
+    }
+}
@@ -0,0 +1,91 @@
+package org.healthysleep.cache;
+
+import java.util.concurrent.Callable;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+/**
+ * Адаптер {@link LfuCache} к {@link org.springframework.cache.Cache}. Ключи Spring
+ * произвольные, поэтому в LFU-кэш кладётся 64-битный хеш ключа, а рядом со значением
+ * хранится сам ключ: при коллизии хешей чужая запись считается промахом. Сброс записи
+ * и очистка кэша рассылаются по шине инвалидаций, если она задана.
+ */
+public class LfuSpringCache extends AbstractValueAdaptingCache {
+
+    private final LfuCache<Object> cache;
+    private final InvalidationBus invalidationBus;
+
+    LfuSpringCache(LfuCache<Object> cache, InvalidationBus invalidationBus) {
+        super(true);
+        this.cache = cache;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getName();
+    }
+
+    @Override
+    public LfuCache<Object> getNativeCache() {
+        return cache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        return cache.get(hash(key)) instanceof Entry entry && entry.key().equals(key) ? entry.value() : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object loaded = cache.getOrLoad(hash(key), id -> new Entry(key, toStoreValue(call(key, valueLoader))));
+        if (loaded instanceof Entry entry && entry.key().equals(key)) {
+            return (T) fromStoreValue(entry.value());
+        }
+        // Хеш занят другим ключом: значение загружается и перезаписывает чужую запись
+        T value = call(key, valueLoader);
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        cache.put(hash(key), new Entry(key, toStoreValue(value)));
+    }
+
+    @Override
+    public void evict(Object key) {
+        long id = hash(key);
+        cache.remove(id);
+        if (invalidationBus != null) {
+            invalidationBus.publish(cache.getName(), id);
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        if (invalidationBus != null) {
+            invalidationBus.publishClear(cache.getName());
+        }
+    }
+
+    private static <T> T call(Object key, Callable<T> valueLoader) {
+        try {
+            return valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    // Целые ключи берутся как есть, остальные - хеш с привязкой к классу ключа
+    static long hash(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        return ((long) key.getClass().getName().hashCode() << 32) | (key.hashCode() & 0xFFFFFFFFL);
+    }
+
+    private record Entry(Object key, Object value) {
+    }
+}
@@ -0,0 +1,12 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MissingAdviceCache extends NegativeCache {
+    
+    public MissingAdviceCache() {
+        super("advices-missing", 10_000, Duration.ofSeconds(30));
+    }
+}
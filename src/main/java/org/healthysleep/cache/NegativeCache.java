@@ -0,0 +1,24 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+
+/**
+ * Кэш id, которых точно нет в базе. Запись живёт недолго и снимается при создании
+ * сущности, поэтому повторные запросы несуществующих id не доходят до базы.
+ */
+public abstract class NegativeCache extends LfuCache<Boolean> {
+
+    protected NegativeCache(String name, int maxEntries, Duration ttl) {
+        super(CacheSpec.<Boolean>maximumSize(maxEntries)
+                .name(name)
+                .expireAfterWrite(ttl));
+    }
+
+    public boolean isKnownMissing(long id) {
+        return get(id) != null;
+    }
+
+    public void markMissing(long id) {
+        put(id, Boolean.TRUE);
+    }
+}
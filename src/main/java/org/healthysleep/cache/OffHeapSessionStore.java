@@ -0,0 +1,268 @@
+package org.healthysleep.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Хранилище сессий сна вне кучи. Каждая сессия занимает строку фиксированной ширины
+ * (id, userId, начало и конец в секундах эпохи UTC) в прямом буфере, а индекс
+ * id -> номер строки - хеш-таблица с открытой адресацией во втором прямом буфере.
+ * Поэтому миллионы сессий не создают объектов для сборщика мусора.
+ * При заполнении перезаписываются самые старые строки.
+ */
+@Component
+public class OffHeapSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapSessionStore.class);
+
+    private static final int ROW_BYTES = 32;
+    private static final int ID_OFFSET = 0;
+    private static final int USER_ID_OFFSET = 8;
+    private static final int START_OFFSET = 16;
+    private static final int END_OFFSET = 24;
+    private static final int SLOT_BYTES = 12;
+    private static final long EMPTY = Long.MIN_VALUE;
+    // Оба буфера должны помещаться в адресацию ByteBuffer
+    private static final int MAX_ROWS = (1 << 26) - 1;
+
+    private final StampedLock lock = new StampedLock();
+    private final ByteBuffer rows;
+    private final int capacity;
+    private final ByteBuffer index;
+    private final int indexMask;
+    private int nextRow;
+    private int size;
+
+    public OffHeapSessionStore(@Value("${cache.sessions.off-heap-rows:1000000}") int capacity) {
+        if (capacity <= 0 || capacity > MAX_ROWS) {
+            throw new IllegalArgumentException("Off-heap session rows must be in 1.." + MAX_ROWS);
+        }
+        this.capacity = capacity;
+        this.rows = ByteBuffer.allocateDirect(capacity * ROW_BYTES).order(ByteOrder.nativeOrder());
+        int indexSlots = Integer.highestOneBit(Math.max(2, capacity - 1) << 1) << 1;
+        this.index = ByteBuffer.allocateDirect(indexSlots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        this.indexMask = indexSlots - 1;
+        resetBuffers();
+        logger.info("Off-heap session store initialized with {} rows ({} bytes)",
+                capacity, (long) capacity * ROW_BYTES + (long) indexSlots * SLOT_BYTES);
+    }
+
+    public Session get(long id) {
+        long stamp = lock.tryOptimisticRead();
+        Session view = read(id);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                view = read(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return view;
+    }
+
+    public void put(Session session) {
+        if (StaleReads.inCurrentTransaction()) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            write(session);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Collection<Session> sessions) {
+        if (StaleReads.inCurrentTransaction()) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (Session session : sessions) {
+                write(session);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(id);
+            if (slot >= 0) {
+                int row = rowAt(slot);
+                rows.putLong(row * ROW_BYTES + ID_OFFSET, EMPTY);
+                deleteSlot(slot);
+                size--;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            resetBuffers();
+            nextRow = 0;
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private Session read(long id) {
+        int slot = findSlot(id);
+        if (slot < 0) {
+            return null;
+        }
+        int base = rowAt(slot) * ROW_BYTES;
+        if (base < 0 || base > rows.capacity() - ROW_BYTES || rows.getLong(base + ID_OFFSET) != id) {
+            return null;
+        }
+        User user = new User();
+        user.setId(rows.getLong(base + USER_ID_OFFSET));
+        Session view = new Session(id, user);
+        view.setStartTime(fromEpoch(rows.getLong(base + START_OFFSET)));
+        view.setEndTime(fromEpoch(rows.getLong(base + END_OFFSET)));
+        return view;
+    }
+
+    private void write(Session session) {
+        if (session.getId() == null || session.getId() == EMPTY || session.getUser() == null
+                || session.getUser().getId() == null || session.getStartTime() == null
+                || session.getEndTime() == null) {
+            return;
+        }
+        long id = session.getId();
+        int slot = findSlot(id);
+        int row;
+        if (slot >= 0) {
+            row = rowAt(slot);
+        } else {
+            row = allocateRow();
+            insertSlot(id, row);
+            size++;
+        }
+        int base = row * ROW_BYTES;
+        rows.putLong(base + ID_OFFSET, id);
+        rows.putLong(base + USER_ID_OFFSET, session.getUser().getId());
+        rows.putLong(base + START_OFFSET, toEpoch(session.getStartTime()));
+        rows.putLong(base + END_OFFSET, toEpoch(session.getEndTime()));
+    }
+
+    // Строки выдаются по кольцу; освобождённые удалением переиспользуются на следующем круге
+    private int allocateRow() {
+        int row = nextRow;
+        nextRow = (nextRow + 1) % capacity;
+        long previousId = rows.getLong(row * ROW_BYTES + ID_OFFSET);
+        if (previousId != EMPTY) {
+            // Кольцо сделало круг: старейшая строка уступает место новой
+            int slot = findSlot(previousId);
+            if (slot >= 0 && rowAt(slot) == row) {
+                deleteSlot(slot);
+                size--;
+            }
+        }
+        return row;
+    }
+
+    private int findSlot(long id) {
+        int slot = mix(id) & indexMask;
+        for (int probes = 0; probes <= indexMask; probes++) {
+            long key = keyAt(slot);
+            if (key == id) {
+                return slot;
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    private void insertSlot(long id, int row) {
+        int slot = mix(id) & indexMask;
+        while (keyAt(slot) != EMPTY) {
+            slot = (slot + 1) & indexMask;
+        }
+        setSlot(slot, id, row);
+    }
+
+    // Удаление со сдвигом назад, чтобы цепочки проб оставались без «надгробий»
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & indexMask;
+        long key;
+        while ((key = keyAt(next)) != EMPTY) {
+            int home = mix(key) & indexMask;
+            if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                setSlot(hole, key, rowAt(next));
+                hole = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+        setSlot(hole, EMPTY, 0);
+    }
+
+    private long keyAt(int slot) {
+        return index.getLong(slot * SLOT_BYTES);
+    }
+
+    private int rowAt(int slot) {
+        return index.getInt(slot * SLOT_BYTES + 8);
+    }
+
+    private void setSlot(int slot, long key, int row) {
+        index.putLong(slot * SLOT_BYTES, key);
+        index.putInt(slot * SLOT_BYTES + 8, row);
+    }
+
+    private void resetBuffers() {
+        for (int slot = 0; slot <= indexMask; slot++) {
+            setSlot(slot, EMPTY, 0);
+        }
+        for (int row = 0; row < capacity; row++) {
+            rows.putLong(row * ROW_BYTES + ID_OFFSET, EMPTY);
+        }
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long toEpoch(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpoch(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,36 @@
+package org.healthysleep.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Кольцевой буфер попаданий сегмента. Запись не блокирует поток; при переполнении
+ * старые отметки перезаписываются, поэтому частота считается приблизительно.
+ */
+final class ReadBuffer<T> {
+
+    static final int SIZE = 64;
+    private static final int MASK = SIZE - 1;
+
+    private final AtomicReferenceArray<CacheEntry<T>> slots = new AtomicReferenceArray<>(SIZE);
+    private final AtomicInteger writeCounter = new AtomicInteger();
+
+    /**
+     * Возвращает true, когда буфер заполнен и его пора применить к сегменту.
+     */
+    boolean record(CacheEntry<T> entry) {
+        int index = writeCounter.getAndIncrement() & MASK;
+        slots.lazySet(index, entry);
+        return index == MASK;
+    }
+
+    void drainTo(Consumer<CacheEntry<T>> consumer) {
+        for (int i = 0; i < SIZE; i++) {
+            CacheEntry<T> entry = slots.getAndSet(i, null);
+            if (entry != null) {
+                consumer.accept(entry);
+            }
+        }
+    }
+}
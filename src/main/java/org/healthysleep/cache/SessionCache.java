@@ -1,12 +1,16 @@
 package org.healthysleep.cache;
 
+import java.time.Duration;
 import org.healthysleep.model.Session;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class SessionCache extends LfuCache<Session> {
     
-    public SessionCache() {
-        super(100);
+    public SessionCache(@Value("${cache.capacity.sessions:524288}") long maxWeightBytes) {
+        super(CacheSpec.<Session>maximumWeight(maxWeightBytes, EntityWeights::session)
+                .name("sessions")
+                .expireAfterAccess(Duration.ofMinutes(30)));
     }
-}
\ No newline at end of file
+}
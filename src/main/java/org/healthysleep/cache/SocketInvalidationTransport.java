@@ -0,0 +1,89 @@
+package org.healthysleep.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Доставка UDP-датаграммами: пачка уходит одним пакетом каждому узлу из списка.
+ * Потерянная пачка не повторяется - устаревшая запись доживёт максимум до своего TTL.
+ */
+public class SocketInvalidationTransport implements InvalidationTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketInvalidationTransport.class);
+
+    private static final int MAX_DATAGRAM = 65_507;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private Thread listener;
+
+    public SocketInvalidationTransport(InetAddress address, int port, List<InetSocketAddress> peers) {
+        try {
+            this.socket = new DatagramSocket(new InetSocketAddress(address, port));
+        } catch (SocketException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.peers = List.copyOf(peers);
+    }
+
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void send(InvalidationBatch batch) {
+        byte[] data = batch.encode();
+        if (data.length > MAX_DATAGRAM) {
+            logger.warn("Invalidation batch of {} bytes does not fit into a datagram", data.length);
+            return;
+        }
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (IOException e) {
+                logger.warn("Failed to send invalidations to {}: {}", peer, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start(Consumer<InvalidationBatch> receiver) {
+        if (listener != null) {
+            throw new IllegalStateException("Transport is already started");
+        }
+        listener = new Thread(() -> listen(receiver), "cache-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    private void listen(Consumer<InvalidationBatch> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                receiver.accept(InvalidationBatch.decode(packet.getData(), packet.getLength()));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("Dropped invalidation datagram: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to apply invalidations: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.healthysleep.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Отметка транзакции, читающей с реплики, которая может отставать от недавней записи.
+ * Кэши такие чтения не запоминают: инвалидация уже прошла, и устаревшее значение
+ * прожило бы в кэше до истечения срока.
+ */
+public final class StaleReads {
+
+    private static final Object KEY = StaleReads.class;
+
+    private StaleReads() {
+    }
+
+    // Отметка снимается по завершении транзакции
+    public static void markCurrentTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+            }
+        });
+    }
+
+    public static boolean inCurrentTransaction() {
+        return TransactionSynchronizationManager.hasResource(KEY);
+    }
+}
@@ -1,11 +1,16 @@
 package org.healthysleep.cache;
 
+import java.time.Duration;
 import org.healthysleep.model.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class UserCache extends LfuCache<User> {
-    public UserCache() {
-        super(100);
+    
+    public UserCache(@Value("${cache.capacity.users:1048576}") long maxWeightBytes) {
+        super(CacheSpec.<User>maximumWeight(maxWeightBytes, EntityWeights::user)
+                .name("users")
+                .expireAfterWrite(Duration.ofMinutes(10)));
     }
 }
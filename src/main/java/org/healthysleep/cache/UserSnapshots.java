@@ -0,0 +1,59 @@
+package org.healthysleep.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import org.healthysleep.model.Advice;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.User;
+import org.hibernate.Hibernate;
+
+/**
+ * Отсоединённые снимки пользователей для {@link UserCache}. Снимок - новый объект вне
+ * контекста персистентности: скалярные поля скопированы, а советы и сессии заменены
+ * неизменяемыми множествами заглушек, у которых заполнен только id. Поэтому снимок
+ * не держит граф сущностей и не вызывает ленивую загрузку при чтении.
+ */
+public final class UserSnapshots {
+
+    private UserSnapshots() {
+    }
+
+    public static User of(User user, Collection<Long> adviceIds, Collection<Long> sessionIds) {
+        User snapshot = new User();
+        snapshot.setId(user.getId());
+        snapshot.setUsername(user.getUsername());
+        snapshot.setEmail(user.getEmail());
+        snapshot.setPassword(user.getPassword());
+        snapshot.setRole(user.getRole());
+        Set<Advice> advices = new HashSet<>();
+        for (Long adviceId : adviceIds) {
+            Advice advice = new Advice();
+            advice.setId(adviceId);
+            advices.add(advice);
+        }
+        Set<Session> sessions = new HashSet<>();
+        for (Long sessionId : sessionIds) {
+            Session session = new Session();
+            session.setId(sessionId);
+            sessions.add(session);
+        }
+        snapshot.setSleepAdvices(Set.copyOf(advices));
+        snapshot.setSleepSessions(Set.copyOf(sessions));
+        return snapshot;
+    }
+
+    /**
+     * Снимок по уже загруженным коллекциям сущности. Вне транзакции вызывать
+     * только после проверки {@link #isLoaded(User)}.
+     */
+    public static User of(User user) {
+        return of(user, user.getSleepAdvices().stream().map(Advice::getId).toList(),
+                user.getSleepSessions().stream().map(Session::getId).toList());
+    }
+
+    public static boolean isLoaded(User user) {
+        return user.getSleepAdvices() != null && Hibernate.isInitialized(user.getSleepAdvices())
+                && user.getSleepSessions() != null && Hibernate.isInitialized(user.getSleepSessions());
+    }
+}
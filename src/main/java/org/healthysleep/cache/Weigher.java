@@ -0,0 +1,11 @@
+package org.healthysleep.cache;
+
+@FunctionalInterface
+public interface Weigher<T> {
+
+    int weigh(T value);
+
+    static <T> Weigher<T> singleton() {
+        return value -> 1;
+    }
+}
@@ -0,0 +1,35 @@
+package org.healthysleep.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.healthysleep.cache.CacheSpec;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.LfuCacheManager;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+@EnableConfigurationProperties(LfuCacheProperties.class)
+public class CachingConfig {
+    
+    @Bean
+    public LfuCacheManager cacheManager(LfuCacheProperties properties, InvalidationBus invalidationBus) {
+        Map<String, CacheSpec<Object>> specs = new LinkedHashMap<>();
+        if (properties.named() != null) {
+            properties.named().forEach((name, named) -> {
+                CacheSpec<Object> spec = CacheSpec.maximumSize(named.maximumSize());
+                if (named.expireAfterWrite() != null) {
+                    spec.expireAfterWrite(named.expireAfterWrite());
+                }
+                if (named.expireAfterAccess() != null) {
+                    spec.expireAfterAccess(named.expireAfterAccess());
+                }
+                specs.put(name, spec);
+            });
+        }
+        return new LfuCacheManager(specs, invalidationBus);
+    }
+}
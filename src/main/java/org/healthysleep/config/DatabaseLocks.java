@@ -0,0 +1,51 @@
+package org.healthysleep.config;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Именованные блокировки MySQL (GET_LOCK) для работ, которые в кластере должен
+ * выполнять один узел. Блокировка принадлежит соединению, поэтому оно удерживается
+ * до конца работы; сама работа может брать из пула другие соединения.
+ */
+@Component
+public class DatabaseLocks {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DatabaseLocks(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Выполняет {@code work} под блокировкой {@code name}, ожидая её не дольше {@code wait}.
+     * Возвращает false, если блокировку держит другой узел и работа не выполнялась.
+     */
+    public boolean runExclusively(String name, Duration wait, Runnable work) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                lock.setString(1, name);
+                lock.setLong(2, wait.toSeconds());
+                try (ResultSet result = lock.executeQuery()) {
+                    if (!result.next() || result.getInt(1) != 1) {
+                        return false;
+                    }
+                }
+            }
+            try {
+                work.run();
+                return true;
+            } finally {
+                try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    release.setString(1, name);
+                    release.execute();
+                }
+            }
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+}
@@ -0,0 +1,43 @@
+package org.healthysleep.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.model.Advice;
+import org.healthysleep.model.Session;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Раньше id сессий и советов выдавал AUTO_INCREMENT, а таблицы генераторов
+ * начинаются с 1. При старте они сдвигаются выше существующих id так, чтобы
+ * первый блок пулового оптимизатора не пересёкся с ними.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class IdSequenceInitializer {
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    @PostConstruct
+    void alignWithExistingIds() {
+        align("session_seq", "sessions", Session.ID_ALLOCATION_SIZE);
+        align("advice_seq", "advices", Advice.ID_ALLOCATION_SIZE);
+    }
+    
+    private void align(String sequence, String table, int allocationSize) {
+        // Пуловый оптимизатор выдаёт блок (next_val - allocationSize, next_val]
+        int updated = jdbcTemplate.update(
+                "UPDATE " + sequence + " SET next_val = (SELECT COALESCE(MAX(id), 0) + ? + 1 FROM " + table + ") "
+                        + "WHERE next_val <= (SELECT COALESCE(MAX(id), 0) + ? FROM " + table + ")",
+                allocationSize, allocationSize);
+        if (updated > 0) {
+            log.info("Id sequence {} moved past existing ids of {}", sequence, table);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.healthysleep.config;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.healthysleep.cache.InProcessInvalidationTransport;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.InvalidationTransport;
+import org.healthysleep.cache.LfuCache;
+import org.healthysleep.cache.OffHeapSessionStore;
+import org.healthysleep.cache.SessionCache;
+import org.healthysleep.cache.SocketInvalidationTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class InvalidationConfig {
+    
+    @Bean(destroyMethod = "close")
+    public InvalidationTransport invalidationTransport(
+            @Value("${cache.invalidation.transport:in-process}") String transport,
+            @Value("${cache.invalidation.address:127.0.0.1}") String address,
+            @Value("${cache.invalidation.port:0}") int port,
+            @Value("${cache.invalidation.peers:}") List<String> peers) throws UnknownHostException {
+        return switch (transport) {
+            case "in-process" -> new InProcessInvalidationTransport();
+            case "socket" -> new SocketInvalidationTransport(
+                    InetAddress.getByName(address), port, parsePeers(peers));
+            default -> throw new IllegalArgumentException("Unknown invalidation transport: " + transport);
+        };
+    }
+    
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public InvalidationBus invalidationBus(
+            InvalidationTransport transport,
+            List<LfuCache<?>> caches,
+            SessionCache sessionCache,
+            OffHeapSessionStore sessionStore,
+            @Value("${cache.invalidation.batch-size:256}") int batchSize,
+            @Value("${cache.invalidation.flush-interval:PT0.05S}") Duration flushInterval) {
+        InvalidationBus bus = new InvalidationBus(transport, batchSize, flushInterval);
+        caches.forEach(bus::register);
+        // Иначе промах в кэше сессий вернул бы удалённую сессию из хранилища вне кучи
+        bus.subscribe(sessionCache.getName(), sessionStore::remove);
+        return bus;
+    }
+    
+    private static List<InetSocketAddress> parsePeers(List<String> peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            int separator = peer.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalidation peer must be host:port, got " + peer);
+            }
+            addresses.add(new InetSocketAddress(peer.substring(0, separator).trim(),
+                    Integer.parseInt(peer.substring(separator + 1).trim())));
+        }
+        return addresses;
+    }
+}
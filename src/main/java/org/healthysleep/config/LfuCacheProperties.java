@@ -0,0 +1,15 @@
+package org.healthysleep.config;
+
+import java.time.Duration;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Именованные кэши для аннотаций Spring: {@code cache.named.<имя>.*}.
+ */
+@ConfigurationProperties(prefix = "cache")
+public record LfuCacheProperties(Map<String, Named> named) {
+    
+    public record Named(int maximumSize, Duration expireAfterWrite, Duration expireAfterAccess) {
+    }
+}
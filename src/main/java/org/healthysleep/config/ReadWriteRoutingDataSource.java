@@ -0,0 +1,57 @@
+package org.healthysleep.config;
+
+import org.healthysleep.cache.StaleReads;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-only транзакции уходят на реплику, остальное - на основной сервер. После
+ * фиксации записи клиент на время окна {@link ReadYourWrites} читает с основного, а
+ * чтения с реплики в это окно помечаются {@link StaleReads} и не попадают в кэши.
+ * Ключ вычисляется при первом обращении к соединению, поэтому источник должен быть
+ * обёрнут в LazyConnectionDataSourceProxy: к этому моменту флаг read-only уже выставлен.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private final ReadYourWrites readYourWrites;
+
+    public ReadWriteRoutingDataSource(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Route.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            pinAfterCommit();
+            return Route.PRIMARY;
+        }
+        if (readYourWrites.isPinned()) {
+            return Route.PRIMARY;
+        }
+        if (readYourWrites.replicaMayBeStale()) {
+            StaleReads.markCurrentTransaction();
+        }
+        return Route.REPLICA;
+    }
+
+    // Окно отсчитывается от фиксации: долгая запись не должна его съесть
+    private void pinAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                readYourWrites.written();
+            }
+        });
+    }
+}
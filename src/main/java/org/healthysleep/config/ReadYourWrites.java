@@ -0,0 +1,127 @@
+package org.healthysleep.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Окно чтения своих записей: после записи клиент ещё {@code window} читает с основного
+ * сервера, пока реплика догоняет. Время последней записи клиента узлы не хранят - оно
+ * уходит клиенту в cookie {@value #COOKIE} и заголовке {@value #HEADER} и приходит
+ * обратно с запросами, поэтому окно действует на любом узле. Вне HTTP-запроса
+ * (планировщик, старт) окно клиента не ведётся.
+ * <p>
+ * Отдельно узел помнит последнюю известную ему запись - свою или пришедшую по шине
+ * инвалидаций: пока реплика может отставать от неё, прочитанное с реплики в кэши не кладётся.
+ */
+public class ReadYourWrites {
+
+    public static final String COOKIE = "last-write";
+    public static final String HEADER = "X-Last-Write";
+    // Запись в этом же запросе: cookie придёт только со следующим
+    private static final String ATTRIBUTE = ReadYourWrites.class.getName() + ".lastWrite";
+
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private volatile long lastWriteSeen = Long.MIN_VALUE;
+
+    public ReadYourWrites(Duration window) {
+        this(window, System::currentTimeMillis);
+    }
+
+    ReadYourWrites(Duration window, LongSupplier clock) {
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+    }
+
+    // Запись этого узла зафиксирована
+    public void written() {
+        long now = clock.getAsLong();
+        lastWriteSeen = now;
+        HttpServletRequest request = currentRequest();
+        if (request == null) {
+            return;
+        }
+        request.setAttribute(ATTRIBUTE, now);
+        HttpServletResponse response = currentResponse();
+        if (response != null && !response.isCommitted()) {
+            response.setHeader(HEADER, Long.toString(now));
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE, Long.toString(now))
+                    .path("/")
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .maxAge(Duration.ofMillis(windowMillis).plusSeconds(1).toSeconds())
+                    .build()
+                    .toString());
+        }
+    }
+
+    // Запись другого узла: о ней сообщила шина инвалидаций
+    public void writeSeen() {
+        lastWriteSeen = clock.getAsLong();
+    }
+
+    /**
+     * Писал ли клиент текущего запроса в последние {@code window}. Метка из будущего
+     * принимается не дальше окна - на расхождение часов узлов, не больше.
+     */
+    public boolean isPinned() {
+        HttpServletRequest request = currentRequest();
+        if (request == null) {
+            return false;
+        }
+        long lastWrite = lastWrite(request);
+        long now = clock.getAsLong();
+        return lastWrite > now - windowMillis && lastWrite <= now + windowMillis;
+    }
+
+    // Реплика может ещё не содержать последнюю известную узлу запись
+    public boolean replicaMayBeStale() {
+        long seen = lastWriteSeen;
+        return seen != Long.MIN_VALUE && clock.getAsLong() < seen + windowMillis;
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        if (request.getAttribute(ATTRIBUTE) instanceof Long written) {
+            return written;
+        }
+        long lastWrite = parse(request.getHeader(HEADER));
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE.equals(cookie.getName())) {
+                    lastWrite = Math.max(lastWrite, parse(cookie.getValue()));
+                }
+            }
+        }
+        return lastWrite;
+    }
+
+    private static long parse(String value) {
+        if (value == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet ? servlet.getRequest() : null;
+    }
+
+    private static HttpServletResponse currentResponse() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet ? servlet.getResponse() : null;
+    }
+}
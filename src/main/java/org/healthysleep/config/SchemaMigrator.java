@@ -0,0 +1,134 @@
+package org.healthysleep.config;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Версионные миграции схемы из {@code classpath:db/migration/V<версия>__<описание>.sql}.
+ * Таблицы по-прежнему создаёт Hibernate, поэтому миграции выполняются после него и
+ * добавляют то, чего нет в маппинге: индексы под запросы репозиториев. Применённые
+ * версии записываются в schema_version, каждый скрипт выполняется один раз.
+ * <p>
+ * Узлы кластера мигрируют по очереди под блокировкой schema_migrate: остальные ждут
+ * её и находят версии уже применёнными. DDL в MySQL не откатывается, поэтому перед
+ * скриптом версия записывается как started, а при ошибке - как failed; с такой строкой
+ * приложение не стартует, пока схему не поправят вручную и не удалят строку. Миграции
+ * выполняются при старте и задерживают его, поэтому копирующие таблицу изменения сюда
+ * не входят: секционирование sessions под архивацию - отдельный скрипт db/archive.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class SchemaMigrator {
+
+    static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    static final String LOCK = "schema_migrate";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseLocks databaseLocks;
+    private final Duration lockWait;
+
+    public SchemaMigrator(JdbcTemplate jdbcTemplate, DatabaseLocks databaseLocks,
+                          @Value("${schema.migrate.lock-wait:PT30M}") Duration lockWait) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseLocks = databaseLocks;
+        this.lockWait = lockWait;
+    }
+
+    @PostConstruct
+    void migrate() throws IOException {
+        migrate(migrations(new PathMatchingResourcePatternResolver().getResources(LOCATION)));
+    }
+
+    void migrate(List<Migration> migrations) {
+        if (!databaseLocks.runExclusively(LOCK, lockWait, () -> migrateLocked(migrations))) {
+            throw new IllegalStateException("Schema migration lock was not acquired within " + lockWait);
+        }
+    }
+
+    private void migrateLocked(List<Migration> migrations) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                + "version INT PRIMARY KEY, description VARCHAR(200) NOT NULL, "
+                + "state VARCHAR(16) NOT NULL DEFAULT 'success', "
+                + "installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        addStateColumn();
+        List<Integer> unfinished = jdbcTemplate.queryForList(
+                "SELECT version FROM schema_version WHERE state <> 'success'", Integer.class);
+        if (!unfinished.isEmpty()) {
+            throw new IllegalStateException("Schema migrations " + unfinished + " did not finish: "
+                    + "repair the schema by hand and delete their rows from schema_version");
+        }
+        Set<Integer> applied = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT version FROM schema_version WHERE state = 'success'", Integer.class));
+        for (Migration migration : migrations) {
+            if (applied.contains(migration.version())) {
+                continue;
+            }
+            jdbcTemplate.update("INSERT INTO schema_version (version, description, state) VALUES (?, ?, 'started')",
+                    migration.version(), migration.description());
+            try {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    ScriptUtils.executeSqlScript(connection, migration.script());
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                jdbcTemplate.update("UPDATE schema_version SET state = 'failed' WHERE version = ?",
+                        migration.version());
+                throw e;
+            }
+            jdbcTemplate.update("UPDATE schema_version SET state = 'success', installed_on = CURRENT_TIMESTAMP "
+                    + "WHERE version = ?", migration.version());
+            log.info("Schema migrated to version {}: {}", migration.version(), migration.description());
+        }
+    }
+
+    // schema_version первых выпусков была без state: все её версии применены полностью
+    private void addStateColumn() {
+        Integer columns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns "
+                + "WHERE table_schema = DATABASE() AND table_name = 'schema_version' AND column_name = 'state'",
+                Integer.class);
+        if (columns != null && columns == 0) {
+            jdbcTemplate.execute("ALTER TABLE schema_version "
+                    + "ADD COLUMN state VARCHAR(16) NOT NULL DEFAULT 'success' AFTER description");
+        }
+    }
+
+    static List<Migration> migrations(Resource[] scripts) {
+        List<Migration> migrations = new ArrayList<>();
+        Set<Integer> versions = new HashSet<>();
+        for (Resource script : scripts) {
+            Matcher name = FILE_NAME.matcher(String.valueOf(script.getFilename()));
+            if (!name.matches()) {
+                throw new IllegalStateException("Invalid migration file name: " + script.getFilename());
+            }
+            int version = Integer.parseInt(name.group(1));
+            if (!versions.add(version)) {
+                throw new IllegalStateException("Duplicate migration version: " + version);
+            }
+            migrations.add(new Migration(version, name.group(2).replace('_', ' '), script));
+        }
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        return migrations;
+    }
+
+    record Migration(int version, String description, Resource script) {
+    }
+}
@@ -4,9 +4,11 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import java.util.List;
-import java.util.stream.Collectors;
 import org.healthysleep.model.Advice;
 import org.healthysleep.service.AdviceService;
+import org.healthysleep.service.BulkReport;
+import org.healthysleep.service.ExportFormat;
+import org.healthysleep.service.KeysetPage;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -17,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "Советы", description = "Операции с советами для сна")
 @RestController
@@ -29,33 +32,49 @@ public class AdviceController {
         this.adviceService = adviceService;
     }
     
-    @Operation(summary = "Получить все советы")
+    @Operation(summary = "Получить советы постранично или все советы с {recommendedHours}")
     @GetMapping
     public ResponseEntity<List<Advice>> getAllAdvices(
-            @RequestParam(required = false) Integer recommendedHours) {
+            @RequestParam(required = false) Integer recommendedHours,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
         if (recommendedHours != null) {
             // Если параметр передан, возвращаем отфильтрованные советы
             return ResponseEntity.ok(adviceService
                     .getAdvicesByRecommendedHours(recommendedHours));
         } else {
-            // Если параметр не передан, возвращаем все советы
-            return ResponseEntity.ok(adviceService.getAllAdvices());
+            // Если параметр не передан, возвращаем страницу советов
+            return Pages.ok(adviceService.getAllAdvices(cursor, limit));
         }
     }
     
+    @Operation(summary = "Выгрузить все советы потоком в формате json или ndjson")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAdvices(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        return ResponseEntity.ok()
+                .contentType(Exports.mediaType(exportFormat))
+                .body(out -> adviceService.exportAdvices(exportFormat, out));
+    }
+    
+    @Operation(summary = "Получить советы по списку id")
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Advice>> getAdvicesByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(adviceService.getAdvicesByIds(ids));
+    }
+    
     @Operation(summary = "Получить совет по {id}")
     @GetMapping("/{id}")
     public ResponseEntity<Advice> getAdviceById(@PathVariable Long id) {
         return ResponseEntity.ok(adviceService.getAdviceById(id));
     }
     
-    @Operation(summary = "Создать несколько советов")
+    @Operation(summary = "Создать несколько советов: невалидные пропускаются, "
+            + "в ответе итог по каждому элементу")
     @PostMapping("/bulk")
-    public ResponseEntity<List<Advice>> createAdvices(@RequestBody List<Advice> advices) {
-        List<Advice> savedAdvices = advices.stream()
-                .map(adviceService::createAdvice)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(savedAdvices);
+    public ResponseEntity<BulkReport> createAdvices(@RequestBody List<Advice> advices) {
+        return ResponseEntity.ok(adviceService.createAdvices(advices));
     }
     
     @Operation(summary = "Создать новый совет")
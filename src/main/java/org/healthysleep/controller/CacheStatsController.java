@@ -0,0 +1,43 @@
+package org.healthysleep.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.Map;
+import org.healthysleep.cache.CacheStats;
+import org.healthysleep.service.CacheStatsService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@Tag(name = "Кэши", description = "Статистика работы кэшей")
+@RestController
+@RequestMapping("/caches")
+public class CacheStatsController {
+    
+    private final CacheStatsService cacheStatsService;
+    
+    public CacheStatsController(CacheStatsService cacheStatsService) {
+        this.cacheStatsService = cacheStatsService;
+    }
+    
+    @Operation(summary = "Получить статистику всех кэшей")
+    @GetMapping("/stats")
+    public Map<String, CacheStats.Snapshot> getAllStats() {
+        return cacheStatsService.getAllStats();
+    }
+    
+    @Operation(summary = "Получить статистику кэша по имени")
+    @GetMapping("/stats/{name}")
+    public CacheStats.Snapshot getStats(@PathVariable String name) {
+        return cacheStatsService.getStats(name);
+    }
+    
+    @Operation(summary = "Изменить ёмкость кэша: число записей или вес в байтах (роль ADMIN)")
+    @PutMapping("/{name}/capacity")
+    public CacheStats.Snapshot resize(@PathVariable String name, @RequestParam long capacity) {
+        return cacheStatsService.resize(name, capacity);
+    }
+}
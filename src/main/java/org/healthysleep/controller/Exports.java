@@ -0,0 +1,17 @@
+package org.healthysleep.controller;
+
+import org.healthysleep.service.ExportFormat;
+import org.springframework.http.MediaType;
+
+final class Exports {
+
+    private Exports() {
+    }
+
+    static MediaType mediaType(ExportFormat format) {
+        return switch (format) {
+            case JSON -> MediaType.APPLICATION_JSON;
+            case NDJSON -> MediaType.APPLICATION_NDJSON;
+        };
+    }
+}
@@ -0,0 +1,22 @@
+package org.healthysleep.controller;
+
+import java.util.List;
+import org.healthysleep.service.KeysetPage;
+import org.springframework.http.ResponseEntity;
+
+final class Pages {
+
+    // Курсор следующей страницы; на последней странице заголовка нет
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private Pages() {
+    }
+
+    static <T> ResponseEntity<List<T>> ok(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor().toString());
+        }
+        return response.body(page.items());
+    }
+}
@@ -3,10 +3,13 @@ package org.healthysleep.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
 import org.healthysleep.model.Session;
+import org.healthysleep.service.ExportFormat;
+import org.healthysleep.service.KeysetPage;
 import org.healthysleep.service.SessionService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,7 +17,9 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "Сессии сна", description = "Операции с сессиями сна")
 @RestController
@@ -27,10 +32,28 @@ public class SessionController {
         this.sessionService = sessionService;
     }
     
-    @Operation(summary = "Получить все сессии сна")
+    @Operation(summary = "Получить сессии сна постранично: с id больше {cursor}, не больше {limit}")
     @GetMapping
-    public ResponseEntity<List<Session>> getAllSessions() {
-        return ResponseEntity.ok(sessionService.getAllSessions());
+    public ResponseEntity<List<Session>> getAllSessions(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
+        return Pages.ok(sessionService.getAllSessions(cursor, limit));
+    }
+    
+    @Operation(summary = "Выгрузить все сессии потоком в формате json или ndjson")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSessions(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        return ResponseEntity.ok()
+                .contentType(Exports.mediaType(exportFormat))
+                .body(out -> sessionService.exportSessions(exportFormat, out));
+    }
+    
+    @Operation(summary = "Получить сессии по списку id")
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Session>> getSessionsByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(sessionService.getSessionsByIds(ids));
     }
     
     @Operation(summary = "Получить сессию по {id}")
@@ -44,12 +67,7 @@ public class SessionController {
     public ResponseEntity<List<Session>> createSessionsBulk(
             @PathVariable Long userId,
             @Valid @RequestBody List<Session> sessions) {
-        List<Session> createdSessions = new ArrayList<>();
-        for (Session session : sessions) {
-            Session sessionServiceSession = sessionService.createSession(userId, session);
-            createdSessions.add(sessionServiceSession);
-        }
-        return ResponseEntity.ok(createdSessions);
+        return ResponseEntity.ok(sessionService.createSessions(userId, sessions));
     }
     
     @Operation(summary = "Создать новую сессию")
@@ -66,10 +84,22 @@ public class SessionController {
         return ResponseEntity.noContent().build();
     }
     
-    @Operation(summary = "Получить сессии по {id} пользователя")
+    @Operation(summary = "Получить сессии по {id} пользователя постранично")
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Session>> getUserSessions(@PathVariable Long userId) {
-        return ResponseEntity.ok(sessionService.getUserSessions(userId));
+    public ResponseEntity<List<Session>> getUserSessions(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
+        return Pages.ok(sessionService.getUserSessions(userId, cursor, limit));
+    }
+    
+    @Operation(summary = "Получить сессии пользователя, начатые с {from} до {to}, включая архивные")
+    @GetMapping("/user/{userId}/range")
+    public ResponseEntity<List<Session>> getUserSessionsBetween(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return ResponseEntity.ok(sessionService.getUserSessionsBetween(userId, from, to));
     }
     
     @Operation(summary = "Получить по {id} пользователя сессию c текущего дня и позже")
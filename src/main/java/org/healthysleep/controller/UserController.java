@@ -5,8 +5,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import java.util.List;
 import org.healthysleep.model.User;
+import org.healthysleep.model.UserSnapshot;
+import org.healthysleep.model.UserSessionStats;
+import org.healthysleep.service.KeysetPage;
 import org.healthysleep.service.UserService;
-import org.hibernate.Hibernate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @Tag(name = "Пользователи", description = "Операции с пользователями")
@@ -28,18 +31,30 @@ public class UserController {
         this.userService = userService;
     }
     
-    @Operation(summary = "Получить всех пользователей")
+    @Operation(summary = "Получить пользователей постранично: с id больше {cursor}, не больше {limit}")
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<List<User>> getAllUsers(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
+        return Pages.ok(userService.getAllUsers(cursor, limit));
     }
     
-    @Operation(summary = "Получить пользователя по {id}")
+    @Operation(summary = "Получить пользователей по списку id: советы и сессии - списками id")
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<UserSnapshot>> getUsersByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(userService.getUsersByIds(ids).stream().map(UserSnapshot::of).toList());
+    }
+    
+    @Operation(summary = "Получить пользователя по {id}: советы и сессии - списками id (adviceIds, sessionIds)")
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        User user = userService.getUserById(id);
-        Hibernate.initialize(user.getSleepSessions()); // Инициализация коллекции
-        return ResponseEntity.ok(user);
+    public ResponseEntity<UserSnapshot> getUserById(@PathVariable Long id) {
+        return ResponseEntity.ok(UserSnapshot.of(userService.getUserById(id)));
+    }
+    
+    @Operation(summary = "Получить сводку по сессиям пользователя: число, минуты сна, последнее начало")
+    @GetMapping("/{id}/session-stats")
+    public ResponseEntity<UserSessionStats> getSessionStats(@PathVariable Long id) {
+        return ResponseEntity.ok(userService.getSessionStats(id));
     }
     
     @Operation(summary = "Добавить советы пользователю")
@@ -73,15 +88,19 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
-    @Operation(summary = "Получить всех пользователей без сессий")
+    @Operation(summary = "Получить пользователей без сессий постранично")
     @GetMapping("/users-without/sessions")
-    public ResponseEntity<List<User>> getUsersWithoutSessions() {
-        return ResponseEntity.ok(userService.getUsersWithoutSessions());
+    public ResponseEntity<List<User>> getUsersWithoutSessions(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
+        return Pages.ok(userService.getUsersWithoutSessions(cursor, limit));
     }
 
-    @Operation(summary = "Получить всех пользователей без советов")
+    @Operation(summary = "Получить пользователей без советов постранично")
     @GetMapping("/users-without/advices")
-    public ResponseEntity<List<User>> getUsersWithoutAdvices() {
-        return ResponseEntity.ok(userService.getUsersWithoutAdvices());
+    public ResponseEntity<List<User>> getUsersWithoutAdvices(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit) {
+        return Pages.ok(userService.getUsersWithoutAdvices(cursor, limit));
     }
 }
@@ -2,7 +2,9 @@ package org.healthysleep.exception;
 
 import io.swagger.v3.oas.annotations.Hidden;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -19,10 +21,24 @@ public class GlobalExceptionHandler {
     
     private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
     
+    // Готовые ответы для постоянных сообщений: поток 404 не создаёт новых тел
+    private static final Map<String, ResponseEntity<ErrorResponse>> NOT_FOUND_RESPONSES = Stream.of(
+                    ResourceNotFoundException.ADVICE,
+                    ResourceNotFoundException.SESSION,
+                    ResourceNotFoundException.USER)
+            .collect(Collectors.toUnmodifiableMap(Throwable::getMessage,
+                    GlobalExceptionHandler::notFoundResponse));
+    
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<ErrorResponse>
         handleResourceNotFoundException(ResourceNotFoundException ex) {
-        logger.error("Resource not found: {}", ex.getMessage());
+        // Отсутствие ресурса - ответ клиенту, а не ошибка сервера
+        logger.debug("Resource not found: {}", ex.getMessage());
+        ResponseEntity<ErrorResponse> response = NOT_FOUND_RESPONSES.get(ex.getMessage());
+        return response != null ? response : notFoundResponse(ex);
+    }
+    
+    private static ResponseEntity<ErrorResponse> notFoundResponse(ResourceNotFoundException ex) {
         ErrorResponse errorResponse = new ErrorResponse(HttpStatus.NOT_FOUND.value(),
                 ex.getMessage(), List.of());
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
@@ -1,7 +1,18 @@
 package org.healthysleep.exception;
 
+/**
+ * Исключение без стека: «не найдено» - ожидаемый ответ клиенту, а не сбой,
+ * и заполнение стека при частых опросах несуществующих id стоило бы дороже запроса.
+ * Для постоянных сообщений заведены готовые экземпляры.
+ */
 public class ResourceNotFoundException extends RuntimeException {
+    
+    public static final ResourceNotFoundException ADVICE = new ResourceNotFoundException("Advice not found");
+    public static final ResourceNotFoundException SESSION =
+            new ResourceNotFoundException("Sleep session not found");
+    public static final ResourceNotFoundException USER = new ResourceNotFoundException("User not found");
+    
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
-}
\ No newline at end of file
+}
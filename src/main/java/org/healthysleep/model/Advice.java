@@ -10,6 +10,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.PreRemove;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
@@ -33,8 +34,13 @@ import lombok.Setter;
 @EqualsAndHashCode(of = "id")
 public class Advice {
 
+    // Id выдаются блоками, чтобы массовый импорт вставлялся пакетами
+    public static final int ID_ALLOCATION_SIZE = 500;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "advice_seq")
+    @SequenceGenerator(name = "advice_seq", sequenceName = "advice_seq",
+            allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @NotBlank(message = "Advice text is required")
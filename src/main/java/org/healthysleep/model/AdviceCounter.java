@@ -0,0 +1,30 @@
+package org.healthysleep.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Сколько пользователей добавили совет. Поддерживается при изменении user_advice;
+ * отсутствие строки означает ноль.
+ */
+@Entity
+@Table(name = "advice_counters")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdviceCounter {
+    
+    @Id
+    @Column(name = "advice_id")
+    private Long adviceId;
+    
+    @Column(nullable = false)
+    private long userCount;
+}
@@ -2,12 +2,15 @@ package org.healthysleep.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
+import jakarta.persistence.ConstraintMode;
 import jakarta.persistence.Entity;
+import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
@@ -26,8 +29,13 @@ import lombok.Setter;
 @EqualsAndHashCode(of = "id")
 public class Session {
     
+    // Id выдаются блоками: пакетная вставка не ждёт сгенерированного ключа после каждой строки
+    public static final int ID_ALLOCATION_SIZE = 500;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "session_seq")
+    @SequenceGenerator(name = "session_seq", sequenceName = "session_seq",
+            allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @NotNull(message = "Start time is required")
@@ -38,8 +46,11 @@ public class Session {
     @Column(nullable = false)
     private LocalDateTime endTime;
     
+    // Внешний ключ ведёт миграция V5: при секционировании под архивацию его снимают,
+    // секционированные таблицы InnoDB внешних ключей не держат
     @ManyToOne
-    @JoinColumn(name = "user_id", nullable = false)
+    @JoinColumn(name = "user_id", nullable = false,
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     @JsonIgnore
     private User user;
     
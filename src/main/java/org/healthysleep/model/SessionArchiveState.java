@@ -0,0 +1,35 @@
+package org.healthysleep.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Общая для всех узлов граница архива сессий; месяцы заданы первым днём.
+ * Единственная строка с id {@link #ID}, null в полях - архив пуст.
+ */
+@Entity
+@Table(name = "session_archive_state")
+@Getter
+@Setter
+@NoArgsConstructor
+public class SessionArchiveState {
+    
+    public static final long ID = 1;
+    
+    @Id
+    private Long id;
+    
+    // Самый старый месяц в архиве
+    private LocalDate oldestMonth;
+    
+    // Первый месяц, который читается из таблицы
+    private LocalDate firstHotMonth;
+    
+    // Первый месяц, в который можно писать: впереди firstHotMonth, пока месяц выгружается
+    private LocalDate firstWritableMonth;
+}
@@ -0,0 +1,18 @@
+package org.healthysleep.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка сессии в архиве: в отличие от сущности хранит id пользователя.
+ */
+public record SessionRecord(Long id, Long userId, LocalDateTime startTime, LocalDateTime endTime) {
+    
+    public Session toSession() {
+        User user = new User();
+        user.setId(userId);
+        Session session = new Session(id, user);
+        session.setStartTime(startTime);
+        session.setEndTime(endTime);
+        return session;
+    }
+}
@@ -10,6 +10,8 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.Email;
@@ -23,9 +25,12 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 
 @Entity
 @Table(name = "users")
+@NamedEntityGraph(name = User.WITH_ADVICES, attributeNodes = @NamedAttributeNode("sleepAdvices"))
+@NamedEntityGraph(name = User.WITH_SESSIONS, attributeNodes = @NamedAttributeNode("sleepSessions"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -33,6 +38,9 @@ import lombok.Setter;
 @EqualsAndHashCode(of = "id")
 public class User {
     
+    public static final String WITH_ADVICES = "User.sleepAdvices";
+    public static final String WITH_SESSIONS = "User.sleepSessions";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -55,6 +63,8 @@ public class User {
     @Column(nullable = false)
     private String role;
     
+    // Ленивые коллекции, не загруженные графом, подгружаются пачками, а не по одной
+    @BatchSize(size = 50)
     @ManyToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     @JoinTable(
             name = "user_advice",
@@ -63,6 +73,7 @@ public class User {
     )
     private Set<Advice> sleepAdvices = new HashSet<>();
     
+    @BatchSize(size = 50)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "user", cascade = CascadeType.ALL)
     private Set<Session> sleepSessions = new HashSet<>();
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package org.healthysleep.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Сводка по сессиям пользователя. Поддерживается при создании и удалении сессий;
+ * отсутствие строки означает, что сессий нет.
+ */
+@Entity
+@Table(name = "user_session_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSessionStats {
+    
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(nullable = false)
+    private long sessionCount;
+    
+    @Column(nullable = false)
+    private long totalSleepMinutes;
+    
+    private LocalDateTime lastSessionStart;
+}
@@ -0,0 +1,18 @@
+package org.healthysleep.model;
+
+import java.util.List;
+
+/**
+ * Ответ чтения пользователя по id: советы и сессии представлены только идентификаторами,
+ * сами объекты читаются через /api/advices и /api/sessions. Пароль в ответ не входит.
+ */
+public record UserSnapshot(Long id, String username, String email, String role,
+                           List<Long> adviceIds, List<Long> sessionIds) {
+
+    // Принимает снимок из UserCache или сущность с загруженными коллекциями
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(user.getId(), user.getUsername(), user.getEmail(), user.getRole(),
+                user.getSleepAdvices().stream().map(Advice::getId).sorted().toList(),
+                user.getSleepSessions().stream().map(Session::getId).sorted().toList());
+    }
+}
@@ -0,0 +1,33 @@
+package org.healthysleep.repository;
+
+import java.util.Collection;
+import org.healthysleep.model.AdviceCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AdviceCounterRepository extends JpaRepository<AdviceCounter, Long> {
+    
+    @Modifying
+    @Query(value = "INSERT INTO advice_counters (advice_id, user_count) "
+            + "SELECT a.id, GREATEST(:delta, 0) FROM advices a WHERE a.id IN (:adviceIds) "
+            + "ON DUPLICATE KEY UPDATE user_count = GREATEST(user_count + :delta, 0)",
+            nativeQuery = true)
+    int add(@Param("adviceIds") Collection<Long> adviceIds, @Param("delta") int delta);
+    
+    @Modifying
+    @Query(value = "INSERT INTO advice_counters (advice_id, user_count) "
+            + "SELECT * FROM (SELECT a.id, COUNT(ua.user_id) AS actual_count FROM advices a "
+            + "LEFT JOIN user_advice ua ON ua.advice_id = a.id GROUP BY a.id) AS actual "
+            + "ON DUPLICATE KEY UPDATE user_count = actual.actual_count",
+            nativeQuery = true)
+    int recount();
+    
+    @Modifying
+    @Query(value = "DELETE FROM advice_counters WHERE advice_id NOT IN (SELECT id FROM advices)",
+            nativeQuery = true)
+    int deleteOrphans();
+}
@@ -1,14 +1,25 @@
 package org.healthysleep.repository;
 
+import jakarta.persistence.QueryHint;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import org.healthysleep.model.Advice;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface AdviceRepository extends JpaRepository<Advice, Long> {
+    
+    List<Advice> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+    
     List<Advice> findAllByRecommendedHours(
             @Min(
                     value = 1,
@@ -35,4 +46,15 @@ public interface AdviceRepository extends JpaRepository<Advice, Long> {
                     value = 24,
                     message = "Recommended hours cannot exceed 24")
             int recommendedHoursIsLessThan);
+    
+    @Query("SELECT a.id FROM User u JOIN u.sleepAdvices a WHERE u.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+    
+    @Query("SELECT u.id AS userId, a.id AS linkedId FROM User u JOIN u.sleepAdvices a "
+            + "WHERE u.id IN :userIds")
+    List<UserLink> findLinksByUserIds(@Param("userIds") Collection<Long> userIds);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT a FROM Advice a ORDER BY a.id")
+    Stream<Advice> streamAll();
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package org.healthysleep.repository;
+
+import jakarta.persistence.LockModeType;
+import java.util.Optional;
+import org.healthysleep.model.SessionArchiveState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SessionArchiveStateRepository extends JpaRepository<SessionArchiveState, Long> {
+    
+    // Разделяемая блокировка до конца транзакции записи: закрытие месяца ждёт её коммита
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT s FROM SessionArchiveState s WHERE s.id = " + SessionArchiveState.ID)
+    Optional<SessionArchiveState> findForWrite();
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM SessionArchiveState s WHERE s.id = " + SessionArchiveState.ID)
+    Optional<SessionArchiveState> findForUpdate();
+}
@@ -1,10 +1,17 @@
 package org.healthysleep.repository;
 
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import org.healthysleep.model.Session;
-import org.healthysleep.model.User;
+import org.healthysleep.model.SessionRecord;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -14,6 +21,33 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
     @Query("SELECT s FROM Session s WHERE s.user.id = :userId AND s.startTime >= CURRENT_DATE")
     List<Session> findUserSessionsFromToday(@Param("userId") Long userId);
     
-    List<Session> findByUser(User user);
+    @Query("SELECT s FROM Session s WHERE s.user.id = :userId "
+            + "AND s.startTime >= :from AND s.startTime < :to ORDER BY s.startTime")
+    List<Session> findUserSessionsBetween(@Param("userId") Long userId,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to);
+    
+    List<Session> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+    
+    // Диапазон по индексу idx_sessions_user_id (user_id, id) без сортировки
+    List<Session> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long id, Limit limit);
+    
+    @Query("SELECT s.id FROM Session s WHERE s.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+    
+    @Query("SELECT s.user.id AS userId, s.id AS linkedId FROM Session s WHERE s.user.id IN :userIds")
+    List<UserLink> findLinksByUserIds(@Param("userIds") Collection<Long> userIds);
+    
+    // Курсор на стороне сервера (useCursorFetch): драйвер держит в памяти одну выборку
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT s FROM Session s JOIN FETCH s.user ORDER BY s.id")
+    Stream<Session> streamAll();
+    
+    // Без нижней границы: выбирает всю младшую секцию, которую архиватор затем удаляет.
+    // Порядок по пользователю нужен индексу архива и идёт по idx_sessions_user_start_end
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new org.healthysleep.model.SessionRecord(s.id, s.user.id, s.startTime, s.endTime) "
+            + "FROM Session s WHERE s.startTime < :to ORDER BY s.user.id, s.startTime")
+    Stream<SessionRecord> streamStartedBefore(@Param("to") LocalDateTime to);
 }
 
@@ -0,0 +1,11 @@
+package org.healthysleep.repository;
+
+/**
+ * Проекция связи пользователя с советом или сессией: только пара идентификаторов.
+ */
+public interface UserLink {
+    
+    Long getUserId();
+    
+    Long getLinkedId();
+}
@@ -1,8 +1,11 @@
 package org.healthysleep.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.healthysleep.model.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -15,11 +18,22 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     boolean existsByUsername(String username);
 
-    @Query("SELECT u FROM User u LEFT JOIN u.sleepSessions s WHERE s IS NULL")
-    List<User> findUsersWithoutSessions();
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 
-    @Query("SELECT u FROM User u LEFT JOIN u.sleepAdvices s WHERE s IS NULL")
-    List<User> findUsersWithoutAdvices();
+    @Query("SELECT u FROM User u WHERE u.id > :after AND u.sleepSessions IS EMPTY ORDER BY u.id")
+    List<User> findUsersWithoutSessions(@Param("after") Long after, Limit limit);
+
+    @Query("SELECT u FROM User u WHERE u.id > :after AND u.sleepAdvices IS EMPTY ORDER BY u.id")
+    List<User> findUsersWithoutAdvices(@Param("after") Long after, Limit limit);
+    
+    // Два графа вместо одного: выборка обеих коллекций сразу дала бы декартово произведение
+    @EntityGraph(User.WITH_ADVICES)
+    @Query("SELECT u FROM User u WHERE u.id IN :ids")
+    List<User> fetchSleepAdvices(@Param("ids") Collection<Long> ids);
+    
+    @EntityGraph(User.WITH_SESSIONS)
+    @Query("SELECT u FROM User u WHERE u.id IN :ids")
+    List<User> fetchSleepSessions(@Param("ids") Collection<Long> ids);
     
     @Query("SELECT u FROM User u WHERE u.username = :username")
     Optional<User> findByUsername(@Param("username") String username);
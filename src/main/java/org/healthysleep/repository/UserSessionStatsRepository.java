@@ -0,0 +1,77 @@
+package org.healthysleep.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.healthysleep.model.UserSessionStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserSessionStatsRepository extends JpaRepository<UserSessionStats, Long> {
+    
+    @Modifying
+    @Query(value = "INSERT INTO user_session_stats "
+            + "(user_id, session_count, total_sleep_minutes, last_session_start) "
+            + "VALUES (:userId, :count, :minutes, :lastStart) "
+            + "ON DUPLICATE KEY UPDATE session_count = session_count + :count, "
+            + "total_sleep_minutes = total_sleep_minutes + :minutes, "
+            + "last_session_start = GREATEST(COALESCE(last_session_start, :lastStart), :lastStart)",
+            nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("count") long count,
+            @Param("minutes") long minutes, @Param("lastStart") LocalDateTime lastStart);
+    
+    // Последнее начало пересчитывается по оставшимся сессиям: удалённая ещё не сброшена в базу.
+    // Архивные сессии старше любой оставшейся, поэтому их итоги нужны, только если таких нет
+    @Modifying
+    @Query(value = "UPDATE user_session_stats SET session_count = GREATEST(session_count - 1, 0), "
+            + "total_sleep_minutes = GREATEST(total_sleep_minutes - :minutes, 0), "
+            + "last_session_start = COALESCE((SELECT MAX(s.start_time) FROM sessions s "
+            + "WHERE s.user_id = :userId AND s.id <> :sessionId), "
+            + "(SELECT MAX(a.last_start) FROM session_archive_totals a WHERE a.user_id = :userId)) "
+            + "WHERE user_id = :userId",
+            nativeQuery = true)
+    int remove(@Param("userId") Long userId, @Param("sessionId") Long sessionId,
+               @Param("minutes") long minutes);
+    
+    @Modifying
+    @Query(value = "INSERT INTO user_session_stats "
+            + "(user_id, session_count, total_sleep_minutes, last_session_start) "
+            + "SELECT * FROM (SELECT t.user_id, SUM(t.session_count) AS actual_count, "
+            + "SUM(t.minutes) AS actual_minutes, MAX(t.last_start) AS actual_last FROM ("
+            + "SELECT s.user_id, COUNT(*) AS session_count, "
+            + "COALESCE(SUM(TIMESTAMPDIFF(MINUTE, s.start_time, s.end_time)), 0) AS minutes, "
+            + "MAX(s.start_time) AS last_start FROM sessions s GROUP BY s.user_id "
+            + "UNION ALL SELECT a.user_id, a.session_count, a.total_minutes, a.last_start "
+            + "FROM session_archive_totals a) AS t GROUP BY t.user_id) AS actual "
+            + "ON DUPLICATE KEY UPDATE session_count = actual.actual_count, "
+            + "total_sleep_minutes = actual.actual_minutes, last_session_start = actual.actual_last",
+            nativeQuery = true)
+    int recount();
+    
+    @Modifying
+    @Query(value = "DELETE FROM user_session_stats "
+            + "WHERE user_id NOT IN (SELECT DISTINCT s.user_id FROM sessions s) "
+            + "AND user_id NOT IN (SELECT a.user_id FROM session_archive_totals a)",
+            nativeQuery = true)
+    int deleteStale();
+    
+    // Повторный запуск архивации месяца перезаписывает итоги, а не удваивает их
+    @Modifying
+    @Query(value = "INSERT INTO session_archive_totals "
+            + "(user_id, month, session_count, total_minutes, last_start) "
+            + "SELECT * FROM (SELECT s.user_id, :month AS archived_month, COUNT(*) AS archived_count, "
+            + "COALESCE(SUM(TIMESTAMPDIFF(MINUTE, s.start_time, s.end_time)), 0) AS archived_minutes, "
+            + "MAX(s.start_time) AS archived_last FROM sessions s WHERE s.start_time < :to "
+            + "GROUP BY s.user_id) AS archived "
+            + "ON DUPLICATE KEY UPDATE session_count = archived.archived_count, "
+            + "total_minutes = archived.archived_minutes, last_start = archived.archived_last",
+            nativeQuery = true)
+    int addArchiveTotals(@Param("month") LocalDate month, @Param("to") LocalDateTime to);
+    
+    @Modifying
+    @Query(value = "DELETE FROM session_archive_totals WHERE user_id = :userId", nativeQuery = true)
+    int deleteArchiveTotals(@Param("userId") Long userId);
+}
@@ -1,97 +1,242 @@
 package org.healthysleep.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.healthysleep.cache.AdviceCache;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.MissingAdviceCache;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Advice;
 import org.healthysleep.repository.AdviceRepository;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class AdviceService {
     
+    private static final String ADVICES_BY_HOURS = "advices-by-hours";
+    private static final String ADVICES_ABOVE_HOURS = "advices-above-hours";
+    private static final String ADVICES_BELOW_HOURS = "advices-below-hours";
+    // С этого размера проверка элементов распределяется по общему пулу
+    private static final int PARALLEL_VALIDATION_THRESHOLD = 1000;
+    
     private final AdviceRepository adviceRepository;
     private final AdviceCache adviceCache;
+    private final MissingAdviceCache missingAdvices;
+    private final InvalidationBus invalidationBus;
+    private final JsonStreamWriter streamWriter;
+    private final Validator validator;
+    private final AggregateCounterService counters;
     
-    public AdviceService(AdviceRepository adviceRepository, AdviceCache adviceCache) {
+    public AdviceService(AdviceRepository adviceRepository, AdviceCache adviceCache,
+                         MissingAdviceCache missingAdvices, InvalidationBus invalidationBus,
+                         JsonStreamWriter streamWriter, Validator validator,
+                         AggregateCounterService counters) {
         this.adviceRepository = adviceRepository;
         this.adviceCache = adviceCache;
+        this.missingAdvices = missingAdvices;
+        this.invalidationBus = invalidationBus;
+        this.streamWriter = streamWriter;
+        this.validator = validator;
+        this.counters = counters;
     }
     
-    public List<Advice> getAllAdvices() {
-        List<Advice> advices = adviceRepository.findAll();
-        for (Advice advice : advices) {
-            if (adviceCache.get(advice.getId()) == null) {
-                adviceCache.put(advice.getId(), advice);
-            }
+    @Transactional(readOnly = true)
+    public KeysetPage<Advice> getAllAdvices(Long cursor, int limit) {
+        List<Advice> advices = adviceRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        KeysetPage<Advice> page = KeysetPage.of(advices, limit, Advice::getId);
+        cacheMissing(page.items());
+        return page;
+    }
+    
+    /**
+     * Выгружает все советы в {@code out}, не собирая их в список и не кэшируя.
+     */
+    @Transactional(readOnly = true)
+    public long exportAdvices(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<Advice> advices = adviceRepository.streamAll()) {
+            return streamWriter.write(advices, format, out);
         }
-        return advices;
     }
     
+    @Transactional(readOnly = true)
     public Advice getAdviceById(Long id) {
-        Advice cachedAdvice = adviceCache.get(id);
-        if (cachedAdvice != null) {
-            return cachedAdvice;
+        return adviceCache.getOrLoad(id, this::loadAdvice);
+    }
+    
+    private Advice loadAdvice(long id) {
+        if (missingAdvices.isKnownMissing(id)) {
+            throw ResourceNotFoundException.ADVICE;
+        }
+        return adviceRepository.findById(id).orElseThrow(() -> {
+            missingAdvices.markMissing(id);
+            return ResourceNotFoundException.ADVICE;
+        });
+    }
+    
+    /**
+     * Советы в порядке запрошенных id: попадания берутся из кэша, промахи -
+     * одним запросом к базе. Несуществующие id пропускаются.
+     */
+    @Transactional(readOnly = true)
+    public List<Advice> getAdvicesByIds(List<Long> ids) {
+        Map<Long, Advice> found = new HashMap<>(adviceCache.getAll(ids));
+        List<Long> misses = ids.stream().distinct().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, Advice> loaded = byId(adviceRepository.findAllById(misses));
+            adviceCache.putAll(loaded);
+            found.putAll(loaded);
         }
-        Advice advice = adviceRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Advice not found"));
-        adviceCache.put(id, advice);
-        return advice;
+        return ids.stream().distinct().map(found::get).filter(Objects::nonNull).toList();
     }
     
+    @CacheEvict(cacheNames = {ADVICES_BY_HOURS, ADVICES_ABOVE_HOURS, ADVICES_BELOW_HOURS},
+            allEntries = true)
     public Advice createAdvice(Advice advice) {
         Advice savedAdvice = adviceRepository.save(advice);
         adviceCache.put(savedAdvice.getId(), savedAdvice);
+        missingAdvices.remove(savedAdvice.getId());
+        invalidationBus.publish(missingAdvices.getName(), savedAdvice.getId());
         return savedAdvice;
     }
     
+    /**
+     * Проверяет все советы до вставки, большие наборы - параллельно, и сохраняет
+     * прошедшие проверку одной транзакцией пакетными INSERT. Отклонённые элементы
+     * не мешают остальным. Новые советы не кладутся в кэш.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = {ADVICES_BY_HOURS, ADVICES_ABOVE_HOURS, ADVICES_BELOW_HOURS},
+            allEntries = true)
+    public BulkReport createAdvices(List<Advice> advices) {
+        IntStream indexes = IntStream.range(0, advices.size());
+        if (advices.size() >= PARALLEL_VALIDATION_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        List<List<String>> errors = indexes.mapToObj(i -> validate(advices.get(i))).toList();
+        
+        List<Advice> valid = new ArrayList<>();
+        for (int i = 0; i < advices.size(); i++) {
+            if (errors.get(i).isEmpty()) {
+                Advice advice = advices.get(i);
+                // Присланный id превратил бы вставку в merge с отдельным SELECT
+                advice.setId(null);
+                valid.add(advice);
+            }
+        }
+        adviceRepository.saveAll(valid);
+        
+        List<BulkReport.Item> items = new ArrayList<>(advices.size());
+        for (int i = 0; i < advices.size(); i++) {
+            Long id = errors.get(i).isEmpty() ? advices.get(i).getId() : null;
+            items.add(new BulkReport.Item(i, id, errors.get(i)));
+            if (id != null) {
+                missingAdvices.remove(id);
+                invalidationBus.publish(missingAdvices.getName(), id);
+            }
+        }
+        return new BulkReport(valid.size(), advices.size() - valid.size(), items);
+    }
+    
+    private List<String> validate(Advice advice) {
+        if (advice == null) {
+            return List.of("Advice is required");
+        }
+        Set<ConstraintViolation<Advice>> violations = validator.validate(advice);
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .toList();
+    }
+    
+    @CacheEvict(cacheNames = {ADVICES_BY_HOURS, ADVICES_ABOVE_HOURS, ADVICES_BELOW_HOURS},
+            allEntries = true)
     public Advice updateAdvice(Long id, Advice updatedAdvice) {
         Advice advice = getAdviceById(id);
         advice.setAdvice(updatedAdvice.getAdvice());
         advice.setRecommendedHours(updatedAdvice.getRecommendedHours());
         Advice savedAdvice = adviceRepository.save(advice);
         adviceCache.put(id, savedAdvice);
+        invalidationBus.publish(adviceCache.getName(), id);
         return savedAdvice;
     }
     
+    @Transactional(readOnly = true)
+    @Cacheable(ADVICES_BY_HOURS)
     public List<Advice> getAdvicesByRecommendedHours(int recommendedHours) {
         List<Advice> advices = adviceRepository.findAllByRecommendedHours(recommendedHours);
-        for (Advice advice : advices) {
-            if (adviceCache.get(advice.getId()) == null) {
-                adviceCache.put(advice.getId(), advice);
-            }
-        }
+        cacheMissing(advices);
         return advices;
     }
     
+    @Transactional
+    @CacheEvict(cacheNames = {ADVICES_BY_HOURS, ADVICES_ABOVE_HOURS, ADVICES_BELOW_HOURS},
+            allEntries = true)
     public void deleteAdvice(Long id) {
         adviceCache.remove(id);
+        counters.adviceDeleted(id);
         adviceRepository.deleteById(id);
+        invalidationBus.publish(adviceCache.getName(), id);
     }
     
+    @Transactional(readOnly = true)
+    @Cacheable(ADVICES_ABOVE_HOURS)
     public List<Advice> getAdvicesByRecommendedHoursGreaterThan(int hours) {
         List<Advice> advices = adviceRepository.findAllByRecommendedHoursGreaterThan(hours);
-        for (Advice advice : advices) {
-            if (adviceCache.get(advice.getId()) == null) {
-                adviceCache.put(advice.getId(), advice);
-            }
-        }
+        cacheMissing(advices);
         return advices;
     }
     
+    @Transactional(readOnly = true)
+    @Cacheable(ADVICES_BELOW_HOURS)
     public List<Advice> getAdvicesByRecommendedHoursLessThan(int hours) {
         List<Advice> advices = adviceRepository.findAllByRecommendedHoursLessThan(hours);
+        cacheMissing(advices);
+        return advices;
+    }
+    
+    // Счётчик вместо загрузки коллекции users; строки нет и для несуществующего совета
+    @Transactional(readOnly = true)
+    public int getAdviceUserCount(Long adviceId) {
+        long count = counters.getAdviceUserCount(adviceId);
+        if (count == 0 && !adviceRepository.existsById(adviceId)) {
+            throw ResourceNotFoundException.ADVICE;
+        }
+        return Math.toIntExact(count);
+    }
+    
+    // Уже закэшированные советы не перезаписываются, чтобы не искажать их частоту
+    private void cacheMissing(List<Advice> advices) {
+        Map<Long, Advice> cached = adviceCache.peekAll(advices.stream().map(Advice::getId).toList());
+        Map<Long, Advice> missing = new HashMap<>();
         for (Advice advice : advices) {
-            if (adviceCache.get(advice.getId()) == null) {
-                adviceCache.put(advice.getId(), advice);
+            if (!cached.containsKey(advice.getId())) {
+                missing.put(advice.getId(), advice);
             }
         }
-        return advices;
+        if (!missing.isEmpty()) {
+            adviceCache.putAll(missing);
+        }
     }
     
-    public int getAdviceUserCount(Long adviceId) {
-        Advice advice = adviceRepository.findById(adviceId)
-                .orElseThrow(() -> new ResourceNotFoundException("Advice not found"));
-        return advice.getUsers().size();
+    private static Map<Long, Advice> byId(List<Advice> advices) {
+        Map<Long, Advice> byId = new HashMap<>();
+        for (Advice advice : advices) {
+            byId.put(advice.getId(), advice);
+        }
+        return byId;
     }
-}
\ No newline at end of file
+}
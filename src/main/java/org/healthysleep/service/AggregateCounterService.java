@@ -0,0 +1,111 @@
+package org.healthysleep.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.model.AdviceCounter;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.UserSessionStats;
+import org.healthysleep.repository.AdviceCounterRepository;
+import org.healthysleep.repository.UserSessionStatsRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Денормализованные счётчики: число пользователей совета и сводка по сессиям
+ * пользователя. Меняются атомарными upsert в транзакции, изменившей связи или
+ * сессии, и читаются по первичному ключу. Ночная сверка пересчитывает их из
+ * исходных таблиц и исправляет расхождения.
+ */
+@Slf4j
+@Service
+public class AggregateCounterService {
+
+    private final AdviceCounterRepository adviceCounterRepository;
+    private final UserSessionStatsRepository sessionStatsRepository;
+
+    public AggregateCounterService(AdviceCounterRepository adviceCounterRepository,
+                                   UserSessionStatsRepository sessionStatsRepository) {
+        this.adviceCounterRepository = adviceCounterRepository;
+        this.sessionStatsRepository = sessionStatsRepository;
+    }
+
+    public long getAdviceUserCount(Long adviceId) {
+        return adviceCounterRepository.findById(adviceId).map(AdviceCounter::getUserCount).orElse(0L);
+    }
+
+    public UserSessionStats getSessionStats(Long userId) {
+        return sessionStatsRepository.findById(userId)
+                .orElseGet(() -> new UserSessionStats(userId, 0, 0, null));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adviceLinksAdded(Collection<Long> adviceIds) {
+        if (!adviceIds.isEmpty()) {
+            adviceCounterRepository.add(adviceIds, 1);
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adviceLinksRemoved(Collection<Long> adviceIds) {
+        if (!adviceIds.isEmpty()) {
+            adviceCounterRepository.add(adviceIds, -1);
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adviceDeleted(Long adviceId) {
+        adviceCounterRepository.deleteById(adviceId);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sessionsAdded(Long userId, Collection<Session> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        long minutes = 0;
+        LocalDateTime lastStart = null;
+        for (Session session : sessions) {
+            minutes += minutesOf(session);
+            if (lastStart == null || session.getStartTime().isAfter(lastStart)) {
+                lastStart = session.getStartTime();
+            }
+        }
+        sessionStatsRepository.add(userId, sessions.size(), minutes, lastStart);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sessionRemoved(Long userId, Session session) {
+        sessionStatsRepository.remove(userId, session.getId(), minutesOf(session));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void userDeleted(Long userId, Collection<Long> adviceIds) {
+        adviceLinksRemoved(adviceIds);
+        sessionStatsRepository.deleteById(userId);
+        sessionStatsRepository.deleteArchiveTotals(userId);
+    }
+    
+    // Вызывается до удаления секции: итоги считаются по строкам, которые уходят в архив
+    @Transactional
+    public void sessionsArchived(YearMonth month, LocalDateTime to) {
+        sessionStatsRepository.addArchiveTotals(month.atDay(1), to);
+    }
+
+    @Scheduled(cron = "${counters.reconcile-cron:0 30 3 * * *}")
+    @Transactional
+    public void reconcile() {
+        int adviceRows = adviceCounterRepository.recount() + adviceCounterRepository.deleteOrphans();
+        int sessionRows = sessionStatsRepository.recount() + sessionStatsRepository.deleteStale();
+        log.info("Counters reconciled: {} advice rows and {} user rows affected", adviceRows, sessionRows);
+    }
+
+    // Совпадает с TIMESTAMPDIFF(MINUTE, ...) в пересчёте
+    private static long minutesOf(Session session) {
+        return Duration.between(session.getStartTime(), session.getEndTime()).toMinutes();
+    }
+}
@@ -0,0 +1,13 @@
+package org.healthysleep.service;
+
+import java.util.List;
+
+/**
+ * Итог массового создания: по строке на каждый элемент запроса в исходном порядке.
+ * У созданного элемента есть {@code id}, у отклонённого - список ошибок валидации.
+ */
+public record BulkReport(int created, int rejected, List<Item> items) {
+    
+    public record Item(int index, Long id, List<String> errors) {
+    }
+}
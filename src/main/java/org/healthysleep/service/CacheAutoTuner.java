@@ -0,0 +1,171 @@
+package org.healthysleep.service;
+
+import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.cache.CacheStats;
+import org.healthysleep.cache.LfuCache;
+import org.healthysleep.cache.NegativeCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Подстройка ёмкости кэшей. Заполненный кэш растёт, пока прирост ёмкости даёт
+ * заметный прирост доли попаданий и в куче есть запас. Когда после сборки мусора
+ * пул кучи остаётся выше порога, все кэши уменьшаются вдвое. Кэши отсутствующих id
+ * ({@link NegativeCache}) не подстраиваются: их доля попаданий растёт с перебором
+ * случайных id, а не с пользой от ёмкости.
+ */
+@Slf4j
+@Service
+public class CacheAutoTuner {
+
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final double SHRINK_FACTOR = 0.5;
+    private static final int MAX_GROWTH = 8;
+    private static final int MIN_SHRINK = 4;
+    private static final double FULL_RATIO = 0.9;
+    private static final double MIN_GAIN = 0.01;
+    // Меньше обращений за интервал - доля попаданий ничего не говорит
+    private static final long MIN_REQUESTS = 100;
+    private static final double COLLECTION_THRESHOLD = 0.85;
+
+    private final Map<LfuCache<?>, TuningState> states = new IdentityHashMap<>();
+    private final boolean enabled;
+    private final double maxHeapUsage;
+    private final DoubleSupplier heapUsage;
+    private final NotificationListener memoryListener = this::onMemoryNotification;
+    private NotificationEmitter memoryEmitter;
+
+    public CacheAutoTuner(List<LfuCache<?>> caches,
+                          @Value("${cache.auto-tune.enabled:false}") boolean enabled,
+                          @Value("${cache.auto-tune.max-heap-usage:0.7}") double maxHeapUsage) {
+        this(caches, enabled, maxHeapUsage, CacheAutoTuner::currentHeapUsage);
+        if (enabled) {
+            listenForMemoryPressure();
+        }
+    }
+
+    CacheAutoTuner(List<LfuCache<?>> caches, boolean enabled, double maxHeapUsage,
+                   DoubleSupplier heapUsage) {
+        for (LfuCache<?> cache : caches) {
+            if (!(cache instanceof NegativeCache)) {
+                states.put(cache, new TuningState(cache.getMaxCapacity()));
+            }
+        }
+        this.enabled = enabled;
+        this.maxHeapUsage = maxHeapUsage;
+        this.heapUsage = heapUsage;
+    }
+
+    @Scheduled(initialDelayString = "${cache.auto-tune.interval:PT1M}",
+            fixedDelayString = "${cache.auto-tune.interval:PT1M}")
+    public synchronized void tune() {
+        if (!enabled) {
+            return;
+        }
+        boolean heapHasRoom = heapUsage.getAsDouble() < maxHeapUsage;
+        states.forEach((cache, state) -> tune(cache, state, heapHasRoom));
+    }
+
+    synchronized void onMemoryPressure() {
+        states.forEach((cache, state) -> {
+            long floor = Math.max(1, state.initialCapacity / MIN_SHRINK);
+            long capacity = Math.max(floor, (long) (cache.getMaxCapacity() * SHRINK_FACTOR));
+            if (capacity < cache.getMaxCapacity()) {
+                cache.resize(capacity);
+            }
+            // После сжатия прошлые замеры прироста больше не относятся к текущей ёмкости
+            state.grown = false;
+            state.saturated = false;
+        });
+        log.warn("Heap pressure after GC, caches shrunk");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (memoryEmitter != null) {
+            try {
+                memoryEmitter.removeNotificationListener(memoryListener);
+            } catch (ListenerNotFoundException e) {
+                log.debug("Memory listener already removed");
+            }
+        }
+    }
+
+    private void tune(LfuCache<?> cache, TuningState state, boolean heapHasRoom) {
+        CacheStats.Snapshot stats = cache.stats();
+        long hits = stats.hits() - state.lastHits;
+        long misses = stats.misses() - state.lastMisses;
+        state.lastHits = stats.hits();
+        state.lastMisses = stats.misses();
+        if (hits + misses < MIN_REQUESTS) {
+            return;
+        }
+        double ratio = (double) hits / (hits + misses);
+        if (state.grown && ratio - state.lastRatio < MIN_GAIN) {
+            // Последнее увеличение не окупилось: рабочий набор уже помещается
+            state.saturated = true;
+        }
+        state.grown = false;
+        state.lastRatio = ratio;
+        long capacity = cache.getMaxCapacity();
+        long ceiling = state.initialCapacity * MAX_GROWTH;
+        if (state.saturated || !heapHasRoom || capacity >= ceiling
+                || stats.weightedSize() < capacity * FULL_RATIO) {
+            return;
+        }
+        cache.resize(Math.min(ceiling, (long) Math.ceil(capacity * GROWTH_FACTOR)));
+        state.grown = true;
+    }
+
+    private void listenForMemoryPressure() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * COLLECTION_THRESHOLD));
+            }
+        }
+        memoryEmitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        memoryEmitter.addNotificationListener(memoryListener, null, null);
+    }
+
+    private void onMemoryNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            onMemoryPressure();
+        }
+    }
+
+    private static double currentHeapUsage() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return (double) heap.getUsed() / max;
+    }
+
+    private static final class TuningState {
+
+        private final long initialCapacity;
+        private long lastHits;
+        private long lastMisses;
+        private double lastRatio;
+        private boolean grown;
+        private boolean saturated;
+
+        private TuningState(long initialCapacity) {
+            this.initialCapacity = initialCapacity;
+        }
+    }
+}
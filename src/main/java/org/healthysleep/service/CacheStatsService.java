@@ -0,0 +1,52 @@
+package org.healthysleep.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.healthysleep.cache.CacheStats;
+import org.healthysleep.cache.LfuCache;
+import org.healthysleep.cache.LfuCacheManager;
+import org.healthysleep.exception.InvalidInputException;
+import org.healthysleep.exception.ResourceNotFoundException;
+import org.springframework.stereotype.Service;
+
+@Service
+public class CacheStatsService {
+    
+    private final List<LfuCache<?>> caches;
+    
+    public CacheStatsService(List<LfuCache<?>> caches, LfuCacheManager cacheManager) {
+        List<LfuCache<?>> allCaches = new ArrayList<>(caches);
+        allCaches.addAll(cacheManager.getNativeCaches());
+        this.caches = allCaches;
+    }
+    
+    public Map<String, CacheStats.Snapshot> getAllStats() {
+        Map<String, CacheStats.Snapshot> stats = new LinkedHashMap<>();
+        for (LfuCache<?> cache : caches) {
+            stats.put(cache.getName(), cache.stats());
+        }
+        return stats;
+    }
+    
+    public CacheStats.Snapshot getStats(String name) {
+        return findCache(name).stats();
+    }
+    
+    public CacheStats.Snapshot resize(String name, long capacity) {
+        if (capacity <= 0) {
+            throw new InvalidInputException("Cache capacity must be positive");
+        }
+        LfuCache<?> cache = findCache(name);
+        cache.resize(capacity);
+        return cache.stats();
+    }
+    
+    private LfuCache<?> findCache(String name) {
+        return caches.stream()
+                .filter(cache -> cache.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException("Cache not found: " + name));
+    }
+}
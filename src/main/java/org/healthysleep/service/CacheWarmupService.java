@@ -0,0 +1,172 @@
+package org.healthysleep.service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.cache.AdviceCache;
+import org.healthysleep.cache.CacheSnapshots;
+import org.healthysleep.cache.KeyFrequency;
+import org.healthysleep.cache.LfuCache;
+import org.healthysleep.cache.OffHeapSessionStore;
+import org.healthysleep.cache.SessionCache;
+import org.healthysleep.cache.UserCache;
+import org.healthysleep.model.Advice;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.User;
+import org.healthysleep.repository.AdviceRepository;
+import org.healthysleep.repository.SessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Тёплый перезапуск кэшей. Ключи с частотами сохраняются на диск по расписанию
+ * и при остановке, а при старте самые частые из них перечитываются из базы пачками
+ * параллельно. Раннер выполняется до того, как приложение сообщает о готовности.
+ */
+@Slf4j
+@Service
+public class CacheWarmupService implements ApplicationRunner {
+    
+    private final AdviceCache adviceCache;
+    private final SessionCache sessionCache;
+    private final UserCache userCache;
+    private final AdviceRepository adviceRepository;
+    private final SessionRepository sessionRepository;
+    private final UserService userService;
+    private final OffHeapSessionStore sessionStore;
+    private final boolean enabled;
+    private final Path directory;
+    private final int batchSize;
+    private final int parallelism;
+    
+    public CacheWarmupService(AdviceCache adviceCache, SessionCache sessionCache, UserCache userCache,
+                              AdviceRepository adviceRepository, SessionRepository sessionRepository,
+                              UserService userService, OffHeapSessionStore sessionStore,
+                              @Value("${cache.snapshot.enabled:true}") boolean enabled,
+                              @Value("${cache.snapshot.dir:cache-snapshots}") String directory,
+                              @Value("${cache.snapshot.batch-size:200}") int batchSize,
+                              @Value("${cache.snapshot.parallelism:4}") int parallelism) {
+        this.adviceCache = adviceCache;
+        this.sessionCache = sessionCache;
+        this.userCache = userCache;
+        this.adviceRepository = adviceRepository;
+        this.sessionRepository = sessionRepository;
+        this.userService = userService;
+        this.sessionStore = sessionStore;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            warm(adviceCache, executor, ids -> byId(adviceRepository.findAllById(ids), Advice::getId));
+            warm(sessionCache, executor, ids -> {
+                List<Session> sessions = sessionRepository.findAllById(ids);
+                sessionStore.putAll(sessions);
+                return byId(sessions, Session::getId);
+            });
+            warm(userCache, executor, ids -> byId(userService.loadSnapshots(ids), User::getId));
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @PreDestroy
+    @Scheduled(initialDelayString = "${cache.snapshot.interval:PT5M}",
+            fixedDelayString = "${cache.snapshot.interval:PT5M}")
+    public void saveSnapshots() {
+        if (!enabled) {
+            return;
+        }
+        save(adviceCache);
+        save(sessionCache);
+        save(userCache);
+    }
+    
+    private void save(LfuCache<?> cache) {
+        try {
+            List<KeyFrequency> keys = cache.hottestKeys(Integer.MAX_VALUE);
+            CacheSnapshots.write(snapshotFile(cache), keys);
+            log.debug("Saved {} keys of cache '{}'", keys.size(), cache.getName());
+        } catch (IOException e) {
+            log.warn("Failed to save snapshot of cache '{}': {}", cache.getName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Пачки загружаются параллельно, но применяются строго по порядку, чтобы при
+     * нехватке места в кэш попали самые частые ключи.
+     */
+    private <T> void warm(LfuCache<T> cache, ExecutorService executor,
+                          Function<List<Long>, Map<Long, T>> loader) {
+        Path file = snapshotFile(cache);
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<KeyFrequency> keys;
+        try {
+            keys = CacheSnapshots.read(file);
+        } catch (IOException e) {
+            log.warn("Ignoring snapshot of cache '{}': {}", cache.getName(), e.getMessage());
+            return;
+        }
+        List<List<KeyFrequency>> batches = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            batches.add(keys.subList(from, Math.min(keys.size(), from + batchSize)));
+        }
+        List<CompletableFuture<Map<Long, T>>> loads = new ArrayList<>();
+        for (List<KeyFrequency> batch : batches) {
+            List<Long> ids = batch.stream().map(KeyFrequency::key).toList();
+            loads.add(CompletableFuture.supplyAsync(() -> loader.apply(ids), executor));
+        }
+        int restored = 0;
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                Map<Long, T> values = loads.get(i).join();
+                for (KeyFrequency key : batches.get(i)) {
+                    T value = values.get(key.key());
+                    if (value != null && cache.restore(key.key(), value, key.frequency())) {
+                        restored++;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Прогрев - оптимизация: холодный кэш лучше, чем приложение, которое не стартовало
+            log.warn("Warm-up of cache '{}' stopped: {}", cache.getName(), e.getMessage());
+            loads.forEach(load -> load.cancel(false));
+        }
+        log.info("Cache '{}' warmed up with {} of {} keys", cache.getName(), restored, keys.size());
+    }
+    
+    private Path snapshotFile(LfuCache<?> cache) {
+        return directory.resolve(cache.getName() + ".snapshot");
+    }
+    
+    private static <T> Map<Long, T> byId(List<T> values, Function<T, Long> id) {
+        Map<Long, T> byId = new HashMap<>();
+        for (T value : values) {
+            byId.put(id.apply(value), value);
+        }
+        return byId;
+    }
+}
@@ -0,0 +1,20 @@
+package org.healthysleep.service;
+
+import java.util.Locale;
+import org.healthysleep.exception.InvalidInputException;
+
+/**
+ * Формат потоковой выгрузки: JSON-массив или NDJSON - по объекту на строку.
+ */
+public enum ExportFormat {
+    JSON,
+    NDJSON;
+    
+    public static ExportFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Unsupported export format: " + name);
+        }
+    }
+}
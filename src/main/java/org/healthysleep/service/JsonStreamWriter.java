@@ -0,0 +1,57 @@
+package org.healthysleep.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.springframework.stereotype.Component;
+
+/**
+ * Пишет поток сущностей в ответ по мере чтения из базы. Контекст постоянства
+ * очищается каждые {@link #CLEAR_INTERVAL} строк, поэтому память не растёт
+ * с числом строк. Вызывать внутри транзакции, открывшей поток.
+ */
+@Component
+public class JsonStreamWriter {
+    
+    // Совпадает с размером выборки JDBC в потоковых запросах репозиториев
+    public static final int CLEAR_INTERVAL = 500;
+    
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    
+    public JsonStreamWriter(ObjectMapper objectMapper, EntityManager entityManager) {
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+    }
+    
+    public <T> long write(Stream<T> rows, ExportFormat format, OutputStream out) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            if (format == ExportFormat.JSON) {
+                generator.writeStartArray();
+            } else {
+                // Строки NDJSON разделяются только переводом строки
+                generator.setRootValueSeparator(null);
+            }
+            for (Iterator<T> iterator = rows.iterator(); iterator.hasNext(); ) {
+                generator.writeObject(iterator.next());
+                if (format == ExportFormat.NDJSON) {
+                    generator.writeRaw('\n');
+                }
+                if (++count % CLEAR_INTERVAL == 0) {
+                    generator.flush();
+                    entityManager.clear();
+                }
+            }
+            if (format == ExportFormat.JSON) {
+                generator.writeEndArray();
+            }
+        }
+        return count;
+    }
+}
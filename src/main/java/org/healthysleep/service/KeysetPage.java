@@ -0,0 +1,37 @@
+package org.healthysleep.service;
+
+import java.util.List;
+import java.util.function.Function;
+import org.healthysleep.exception.InvalidInputException;
+import org.springframework.data.domain.Limit;
+
+/**
+ * Страница выборки по ключу: элементы с id больше курсора в порядке возрастания id.
+ * Запрос каждой страницы - сканирование диапазона первичного ключа без OFFSET.
+ * {@code nextCursor} - id последнего элемента, если дальше есть строки, иначе null.
+ */
+public record KeysetPage<T>(List<T> items, Long nextCursor) {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 1000;
+
+    static long after(Long cursor) {
+        return cursor != null ? cursor : 0L;
+    }
+
+    // На одну строку больше, чтобы узнать о следующей странице без COUNT
+    static Limit fetchLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidInputException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return Limit.of(limit + 1);
+    }
+
+    static <T> KeysetPage<T> of(List<T> fetched, int limit, Function<T, Long> id) {
+        if (fetched.size() <= limit) {
+            return new KeysetPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new KeysetPage<>(List.copyOf(items), id.apply(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,343 @@
+package org.healthysleep.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.SessionArchiveState;
+import org.healthysleep.model.SessionRecord;
+import org.healthysleep.repository.SessionArchiveStateRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Холодный архив сессий в общем для всех узлов каталоге. На месяц два файла:
+ * sessions-yyyy-MM.ndjson.gz - строки, сгруппированные по пользователю, по отдельному
+ * члену gzip на пользователя (файл целиком читается обычным gunzip), и
+ * sessions-yyyy-MM.idx - отсортированные по id пользователя записи (userId, смещение,
+ * длина). Чтение сессий пользователя - двоичный поиск по индексу и распаковка одного
+ * члена, а не всего месяца. Граница архива хранится в session_archive_state.
+ */
+@Component
+public class SessionArchive {
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final int INDEX_ENTRY_BYTES = 3 * Long.BYTES;
+
+    private final Path dir;
+    private final boolean enabled;
+    private final SessionArchiveStateRepository stateRepository;
+    private final ObjectMapper objectMapper;
+
+    public SessionArchive(@Value("${sessions.archive.dir:}") String dir,
+                          @Value("${sessions.archive.enabled:false}") boolean enabled,
+                          SessionArchiveStateRepository stateRepository,
+                          ObjectMapper objectMapper) {
+        this.dir = dir.isBlank() ? null : Path.of(dir);
+        if (this.dir != null && !this.dir.isAbsolute()) {
+            throw new IllegalArgumentException("sessions.archive.dir must be an absolute path shared by all "
+                    + "instances, got " + dir);
+        }
+        if (enabled && this.dir == null) {
+            throw new IllegalStateException("sessions.archive.enabled requires sessions.archive.dir");
+        }
+        this.enabled = enabled;
+        this.stateRepository = stateRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isConfigured() {
+        return dir != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Начало горячих данных; всё раньше читается только из архива
+    public LocalDateTime hotStart() {
+        return hotStart(state());
+    }
+
+    /**
+     * Самое раннее начало сессии, которое ещё можно записать: всё раньше лежит в архивном
+     * или выгружаемом месяце. Вызывается один раз на транзакцию записи: разделяемая
+     * блокировка строки состояния держится до её коммита, поэтому закрытие месяца
+     * дождётся уже начатых вставок. Без архивации месяцы не закрываются - строка не читается.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public LocalDateTime writableFrom() {
+        if (!enabled) {
+            return LocalDateTime.MIN;
+        }
+        return stateRepository.findForWrite()
+                .map(SessionArchiveState::getFirstWritableMonth)
+                .map(LocalDate::atStartOfDay)
+                .orElse(LocalDateTime.MIN);
+    }
+
+    /**
+     * Закрывает месяц для записи до выгрузки его строк, чтобы в удаляемую секцию
+     * ничего не добавилось. Читается месяц из таблицы, пока не записан архив.
+     */
+    @Transactional
+    public void seal(YearMonth month) {
+        SessionArchiveState state = lockedState();
+        LocalDate next = month.plusMonths(1).atDay(1);
+        if (state.getFirstWritableMonth() == null || next.isAfter(state.getFirstWritableMonth())) {
+            state.setFirstWritableMonth(next);
+        }
+    }
+
+    // Выгрузка не удалась: месяц снова открыт для записи
+    @Transactional
+    public void unseal() {
+        SessionArchiveState state = lockedState();
+        state.setFirstWritableMonth(state.getFirstHotMonth());
+    }
+
+    // Файлы месяца записаны: его чтения переходят в архив
+    @Transactional
+    public void archived(YearMonth month) {
+        SessionArchiveState state = lockedState();
+        LocalDate first = month.atDay(1);
+        LocalDate next = month.plusMonths(1).atDay(1);
+        if (state.getOldestMonth() == null || first.isBefore(state.getOldestMonth())) {
+            state.setOldestMonth(first);
+        }
+        if (state.getFirstHotMonth() == null || next.isAfter(state.getFirstHotMonth())) {
+            state.setFirstHotMonth(next);
+        }
+        if (state.getFirstWritableMonth() == null || next.isAfter(state.getFirstWritableMonth())) {
+            state.setFirstWritableMonth(next);
+        }
+    }
+
+    /**
+     * Пишет месяц во временные файлы и переименовывает их: недописанный архив не
+     * виден, повторная выгрузка месяца заменяет прежнюю. Строки должны идти по
+     * возрастанию id пользователя. Граница архива не меняется - это {@link #archived}.
+     */
+    public long write(YearMonth month, Stream<SessionRecord> rows) throws IOException {
+        Path dataFile = dataFile(requireDir(), month);
+        Path indexFile = indexFile(dir, month);
+        Path dataTemp = Files.createTempFile(dir, dataFile.getFileName().toString(), ".tmp");
+        Path indexTemp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            long count = 0;
+            try (CountingOutputStream data = new CountingOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(dataTemp)));
+                 DataOutputStream index = new DataOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(indexTemp)))) {
+                Long userId = null;
+                long memberStart = 0;
+                GZIPOutputStream member = null;
+                for (Iterator<SessionRecord> iterator = rows.iterator(); iterator.hasNext(); count++) {
+                    SessionRecord row = iterator.next();
+                    if (!row.userId().equals(userId)) {
+                        if (userId != null && row.userId() < userId) {
+                            throw new IllegalStateException("Archive rows must be ordered by user id");
+                        }
+                        if (member != null) {
+                            member.finish();
+                            writeIndexEntry(index, userId, memberStart, data.count - memberStart);
+                        }
+                        userId = row.userId();
+                        memberStart = data.count;
+                        member = new GZIPOutputStream(data.unclosable());
+                    }
+                    member.write(objectMapper.writeValueAsBytes(row));
+                    member.write('\n');
+                }
+                if (member != null) {
+                    member.finish();
+                    writeIndexEntry(index, userId, memberStart, data.count - memberStart);
+                }
+            }
+            Files.move(dataTemp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexTemp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(dataTemp);
+            Files.deleteIfExists(indexTemp);
+        }
+    }
+
+    /**
+     * Сессии пользователя из архивных месяцев, пересекающих [from, to), по времени начала;
+     * {@code to} не должен быть позже {@link #hotStart()}. На месяц - двоичный поиск по
+     * индексу и распаковка сессий только этого пользователя.
+     */
+    public List<Session> read(Long userId, LocalDateTime from, LocalDateTime to) {
+        List<Session> sessions = new ArrayList<>();
+        SessionArchiveState state = state();
+        if (state.getOldestMonth() == null) {
+            return sessions;
+        }
+        Path archiveDir = requireDir();
+        YearMonth oldest = YearMonth.from(state.getOldestMonth());
+        YearMonth first = YearMonth.from(from).isBefore(oldest) ? oldest : YearMonth.from(from);
+        for (YearMonth month = first; month.atDay(1).atStartOfDay().isBefore(to); month = month.plusMonths(1)) {
+            try {
+                for (SessionRecord row : readUser(archiveDir, month, userId)) {
+                    if (!row.startTime().isBefore(from) && row.startTime().isBefore(to)) {
+                        sessions.add(row.toSession());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read session archive for " + month, e);
+            }
+        }
+        return sessions;
+    }
+
+    private List<SessionRecord> readUser(Path archiveDir, YearMonth month, Long userId) throws IOException {
+        Path indexFile = indexFile(archiveDir, month);
+        if (!Files.exists(indexFile)) {
+            return List.of();
+        }
+        long[] member = findMember(indexFile, userId);
+        if (member == null) {
+            return List.of();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(member[1]));
+        try (FileChannel data = FileChannel.open(dataFile(archiveDir, month), StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (data.read(bytes, member[0] + bytes.position()) < 0) {
+                    throw new IOException("Session archive for " + month + " is truncated");
+                }
+            }
+        }
+        List<SessionRecord> rows = new ArrayList<>();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes.array()));
+             MappingIterator<SessionRecord> iterator =
+                     objectMapper.readerFor(SessionRecord.class).readValues(in)) {
+            iterator.forEachRemaining(rows::add);
+        }
+        return rows;
+    }
+
+    // {смещение, длина} члена gzip пользователя или null
+    private static long[] findMember(Path indexFile, long userId) throws IOException {
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long low = 0;
+            long high = index.size() / INDEX_ENTRY_BYTES - 1;
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                entry.clear();
+                while (entry.hasRemaining()) {
+                    if (index.read(entry, middle * INDEX_ENTRY_BYTES + entry.position()) < 0) {
+                        throw new IOException("Session archive index " + indexFile + " is truncated");
+                    }
+                }
+                long entryUserId = entry.getLong(0);
+                if (entryUserId < userId) {
+                    low = middle + 1;
+                } else if (entryUserId > userId) {
+                    high = middle - 1;
+                } else {
+                    return new long[] {entry.getLong(Long.BYTES), entry.getLong(2 * Long.BYTES)};
+                }
+            }
+            return null;
+        }
+    }
+
+    private static void writeIndexEntry(DataOutputStream index, long userId, long offset, long length)
+            throws IOException {
+        index.writeLong(userId);
+        index.writeLong(offset);
+        index.writeLong(length);
+    }
+
+    private SessionArchiveState state() {
+        return stateRepository.findById(SessionArchiveState.ID).orElseGet(SessionArchiveState::new);
+    }
+
+    private SessionArchiveState lockedState() {
+        return stateRepository.findForUpdate()
+                .orElseThrow(() -> new IllegalStateException("session_archive_state row is missing"));
+    }
+
+    private static LocalDateTime hotStart(SessionArchiveState state) {
+        LocalDate month = state.getFirstHotMonth();
+        return month != null ? month.atStartOfDay() : LocalDateTime.MIN;
+    }
+
+    private Path requireDir() {
+        if (dir == null) {
+            throw new IllegalStateException("sessions.archive.dir is not configured");
+        }
+        return dir;
+    }
+
+    private static Path dataFile(Path dir, YearMonth month) {
+        return dir.resolve("sessions-" + MONTH.format(month) + ".ndjson.gz");
+    }
+
+    private static Path indexFile(Path dir, YearMonth month) {
+        return dir.resolve("sessions-" + MONTH.format(month) + ".idx");
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        // Член gzip завершается finish(), а закрывается весь файл один раз
+        private OutputStream unclosable() {
+            return new FilterOutputStream(this) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+    }
+}
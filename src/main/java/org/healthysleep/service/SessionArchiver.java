@@ -0,0 +1,131 @@
+package org.healthysleep.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.config.DatabaseLocks;
+import org.healthysleep.model.SessionRecord;
+import org.healthysleep.repository.SessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Переносит месяцы старше горизонта из таблицы в архив и удаляет их секции. Месяц
+ * сначала закрывается для записи, затем выгружается в файл, затем сохраняются итоги
+ * для сверки счётчиков и только после этого удаляется секция. Сбой на любом шаге
+ * оставляет строки в таблице, и следующий запуск повторяет месяц целиком. В кластере
+ * выгрузку выполняет один узел - тот, что взял блокировку session_archive.
+ */
+@Slf4j
+@Service
+public class SessionArchiver {
+
+    // Секции заводятся наперёд, чтобы вставка не попадала в pmax
+    private static final int MONTHS_AHEAD = 2;
+    private static final String LOCK = "session_archive";
+
+    private final SessionRepository sessionRepository;
+    private final SessionPartitions partitions;
+    private final SessionArchive archive;
+    private final SessionService sessionService;
+    private final AggregateCounterService counters;
+    private final DatabaseLocks databaseLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final int horizonMonths;
+    private final Clock clock;
+
+    public SessionArchiver(SessionRepository sessionRepository,
+                           SessionPartitions partitions,
+                           SessionArchive archive,
+                           SessionService sessionService,
+                           AggregateCounterService counters,
+                           DatabaseLocks databaseLocks,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${sessions.archive.horizon-months:24}") int horizonMonths) {
+        this(sessionRepository, partitions, archive, sessionService, counters, databaseLocks,
+                transactionManager, horizonMonths, Clock.systemDefaultZone());
+    }
+
+    SessionArchiver(SessionRepository sessionRepository, SessionPartitions partitions,
+                    SessionArchive archive, SessionService sessionService,
+                    AggregateCounterService counters, DatabaseLocks databaseLocks,
+                    PlatformTransactionManager transactionManager,
+                    int horizonMonths, Clock clock) {
+        if (horizonMonths < 1) {
+            throw new IllegalArgumentException("Archive horizon must be at least one month");
+        }
+        this.sessionRepository = sessionRepository;
+        this.partitions = partitions;
+        this.archive = archive;
+        this.sessionService = sessionService;
+        this.counters = counters;
+        this.databaseLocks = databaseLocks;
+        // Не read-only: такая транзакция ушла бы на реплику, а отставшая реплика
+        // выгрузила бы не все строки удаляемой секции
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.horizonMonths = horizonMonths;
+        this.clock = clock;
+    }
+
+    @Scheduled(cron = "${sessions.archive.cron:0 0 4 * * *}")
+    public void run() {
+        if (!archive.isEnabled()) {
+            return;
+        }
+        // Не ждём: узел, взявший блокировку, выгрузит те же месяцы
+        if (!databaseLocks.runExclusively(LOCK, Duration.ZERO, this::archiveOldMonths)) {
+            log.info("Session archiving is running on another instance, skipped");
+        }
+    }
+
+    private void archiveOldMonths() {
+        YearMonth current = YearMonth.now(clock);
+        partitions.ensureThrough(current.plusMonths(MONTHS_AHEAD));
+        YearMonth horizon = current.minusMonths(horizonMonths);
+        for (YearMonth month : partitions.months()) {
+            if (!month.isBefore(horizon)) {
+                break;
+            }
+            archive(month);
+        }
+    }
+
+    void archive(YearMonth month) {
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        LongStream.Builder sessionIds = LongStream.builder();
+        Set<Long> userIds = new HashSet<>();
+        archive.seal(month);
+        try {
+            long rows = transactionTemplate.execute(status -> {
+                // Младшая секция выбирается целиком, поэтому нижней границы нет
+                try (Stream<SessionRecord> records = sessionRepository.streamStartedBefore(to)) {
+                    return archive.write(month, records.peek(row -> {
+                        sessionIds.add(row.id());
+                        userIds.add(row.userId());
+                    }));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            archive.archived(month);
+            counters.sessionsArchived(month, to);
+            partitions.drop(month);
+            sessionService.forgetArchived(sessionIds.build(), userIds);
+            log.info("Sessions of {} archived: {} rows", month, rows);
+        } catch (RuntimeException e) {
+            archive.unseal();
+            throw e;
+        }
+    }
+}
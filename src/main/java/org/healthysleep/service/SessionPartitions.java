@@ -0,0 +1,87 @@
+package org.healthysleep.service;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.StringJoiner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Помесячные секции таблицы sessions: p202401 хранит сессии, начатые до 1 февраля 2024
+ * и не попавшие в предыдущую секцию, pmax - всё, что позже последней месячной.
+ * Первое разбиение один раз переносит существующие строки; дальше месяцы выделяются
+ * из pmax заранее, пока она пуста и разбиение ничего не копирует.
+ */
+@Slf4j
+@Component
+public class SessionPartitions {
+
+    static final String OVERFLOW = "pmax";
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SessionPartitions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Месячные секции по возрастанию
+    public List<YearMonth> months() {
+        return names().stream()
+                .filter(name -> !OVERFLOW.equals(name))
+                .map(name -> YearMonth.parse(name, NAME))
+                .toList();
+    }
+
+    /**
+     * Выделяет месячные секции до {@code last} включительно. Первая секция начинается
+     * с месяца самой старой сессии, чтобы в неё не попало ничего старше.
+     */
+    public void ensureThrough(YearMonth last) {
+        List<String> names = names();
+        if (!names.contains(OVERFLOW)) {
+            log.warn("Table sessions is not partitioned, nothing to archive: apply "
+                    + "db/archive/partition_sessions_by_month.sql before enabling sessions.archive");
+            return;
+        }
+        List<YearMonth> months = months();
+        YearMonth next = months.isEmpty() ? oldestMonth(last) : months.get(months.size() - 1).plusMonths(1);
+        if (next.isAfter(last)) {
+            return;
+        }
+        StringJoiner partitions = new StringJoiner(", ", "ALTER TABLE sessions REORGANIZE PARTITION "
+                + OVERFLOW + " INTO (", ", PARTITION " + OVERFLOW + " VALUES LESS THAN (MAXVALUE))");
+        for (YearMonth month = next; !month.isAfter(last); month = month.plusMonths(1)) {
+            partitions.add("PARTITION " + name(month) + " VALUES LESS THAN ('"
+                    + month.plusMonths(1).atDay(1) + "')");
+        }
+        jdbcTemplate.execute(partitions.toString());
+        log.info("Session partitions added from {} to {}", next, last);
+    }
+
+    public void drop(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE sessions DROP PARTITION " + name(month));
+    }
+
+    static String name(YearMonth month) {
+        return NAME.format(month);
+    }
+
+    private List<String> names() {
+        return jdbcTemplate.queryForList("SELECT partition_name FROM information_schema.partitions "
+                + "WHERE table_schema = DATABASE() AND table_name = 'sessions' "
+                + "AND partition_name IS NOT NULL ORDER BY partition_ordinal_position", String.class);
+    }
+
+    private YearMonth oldestMonth(YearMonth fallback) {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(start_time) FROM sessions", Timestamp.class);
+        if (oldest == null) {
+            return fallback;
+        }
+        YearMonth month = YearMonth.from(oldest.toLocalDateTime());
+        return month.isAfter(fallback) ? fallback : month;
+    }
+}
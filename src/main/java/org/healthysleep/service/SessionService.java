@@ -1,102 +1,312 @@
 package org.healthysleep.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.MissingSessionCache;
+import org.healthysleep.cache.OffHeapSessionStore;
 import org.healthysleep.cache.SessionCache;
+import org.healthysleep.cache.UserCache;
+import org.healthysleep.exception.InvalidInputException;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Session;
 import org.healthysleep.model.User;
 import org.healthysleep.repository.SessionRepository;
 import org.healthysleep.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class SessionService {
     
+    static final String USER_SESSIONS = "user-sessions";
+    
     private final SessionRepository sessionRepository;
     private final UserRepository userRepository;
     private final SessionCache sessionCache;
+    private final OffHeapSessionStore sessionStore;
+    private final MissingSessionCache missingSessions;
+    private final UserCache userCache;
+    private final InvalidationBus invalidationBus;
+    private final JsonStreamWriter streamWriter;
+    private final AggregateCounterService counters;
+    private final SessionArchive archive;
     
     @Autowired // Необязательно, если есть только один конструктор
     public SessionService(
             SessionRepository sessionRepository,
             UserRepository userRepository,
-            SessionCache sessionCache
+            SessionCache sessionCache,
+            OffHeapSessionStore sessionStore,
+            MissingSessionCache missingSessions,
+            UserCache userCache,
+            InvalidationBus invalidationBus,
+            JsonStreamWriter streamWriter,
+            AggregateCounterService counters,
+            SessionArchive archive
     ) {
         this.sessionRepository = sessionRepository;
         this.userRepository = userRepository;
         this.sessionCache = sessionCache;
+        this.sessionStore = sessionStore;
+        this.missingSessions = missingSessions;
+        this.userCache = userCache;
+        this.invalidationBus = invalidationBus;
+        this.streamWriter = streamWriter;
+        this.counters = counters;
+        this.archive = archive;
     }
     
-    public List<Session> getAllSessions() {
-        List<Session> sessions = sessionRepository.findAll();
-        for (Session session : sessions) {
-            if (sessionCache.get(session.getId()) == null) {
-                sessionCache.put(session.getId(), session);
-            }
+    @Transactional(readOnly = true)
+    public KeysetPage<Session> getAllSessions(Long cursor, int limit) {
+        List<Session> sessions = sessionRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        return cachePage(KeysetPage.of(sessions, limit, Session::getId));
+    }
+    
+    /**
+     * Выгружает все сессии в {@code out} по мере чтения из базы. Сессии не кэшируются:
+     * полная выгрузка вытеснила бы из кэшей рабочий набор.
+     */
+    @Transactional(readOnly = true)
+    public long exportSessions(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<Session> sessions = sessionRepository.streamAll()) {
+            return streamWriter.write(sessions, format, out);
         }
-        return sessions;
     }
     
+    @Transactional(readOnly = true)
     public Session getSessionById(Long id) {
-        Session cachedSession = sessionCache.get(id);
-        if (cachedSession != null) {
-            return cachedSession;
+        return sessionCache.getOrLoad(id, this::loadSession);
+    }
+    
+    private Session loadSession(long id) {
+        // Второй уровень: лёгкое представление из хранилища вне кучи
+        Session storedSession = sessionStore.get(id);
+        if (storedSession != null) {
+            return storedSession;
         }
-        Session session = sessionRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Sleep session not found"));
-        sessionCache.put(id, session);
+        if (missingSessions.isKnownMissing(id)) {
+            throw ResourceNotFoundException.SESSION;
+        }
+        Session session = sessionRepository.findById(id).orElseThrow(() -> {
+            missingSessions.markMissing(id);
+            return ResourceNotFoundException.SESSION;
+        });
+        sessionStore.put(session);
         return session;
     }
     
-    public List<Session> getUserSessions(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        
-        List<Session> sessions = sessionRepository.findByUser(user);
-        
-        for (Session session : sessions) {
-            if (sessionCache.get(session.getId()) == null) {
-                sessionCache.put(session.getId(), session);
-            }
+    /**
+     * Сессии в порядке запрошенных id: попадания берутся из кэша, промахи -
+     * одним запросом к базе. Несуществующие id пропускаются.
+     */
+    @Transactional(readOnly = true)
+    public List<Session> getSessionsByIds(List<Long> ids) {
+        Map<Long, Session> found = new HashMap<>(sessionCache.getAll(ids));
+        List<Long> misses = ids.stream().distinct().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            List<Session> sessions = sessionRepository.findAllById(misses);
+            Map<Long, Session> loaded = byId(sessions);
+            sessionCache.putAll(loaded);
+            sessionStore.putAll(sessions);
+            found.putAll(loaded);
+        }
+        return ids.stream().distinct().map(found::get).filter(Objects::nonNull).toList();
+    }
+    
+    // Кэшируется только первая страница по умолчанию: её ключ - id пользователя
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USER_SESSIONS, key = "#userId",
+            condition = "#cursor == null && #limit == T(org.healthysleep.service.KeysetPage).DEFAULT_LIMIT")
+    public KeysetPage<Session> getUserSessions(Long userId, Long cursor, int limit) {
+        if (!userRepository.existsById(userId)) {
+            throw ResourceNotFoundException.USER;
         }
         
-        return sessions;
+        List<Session> sessions = sessionRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(
+                userId, KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        
+        return cachePage(KeysetPage.of(sessions, limit, Session::getId));
     }
     
     @Transactional
+    @CacheEvict(cacheNames = USER_SESSIONS, key = "#userId")
     public Session createSession(Long userId, Session session) {
+        requireHot(session, archive.writableFrom());
         User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+                .orElseThrow(() -> ResourceNotFoundException.USER);
         
         session.setUser(user);
         
         Session savedSession = sessionRepository.save(session);
         
         sessionCache.put(savedSession.getId(), savedSession);
+        sessionStore.put(savedSession);
+        missingSessions.remove(savedSession.getId());
+        invalidationBus.publish(missingSessions.getName(), savedSession.getId());
+        counters.sessionsAdded(userId, List.of(savedSession));
+        // Снимок пользователя хранит id его сессий
+        invalidateUser(userId);
         
         return savedSession;
     }
     
+    /**
+     * Создаёт сессии пользователя в одной транзакции: пользователь читается один раз,
+     * вставки уходят пакетами по {@code hibernate.jdbc.batch_size}. В кэш сессий
+     * новые записи не кладутся, чтобы большая загрузка не вытеснила рабочий набор.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = USER_SESSIONS, key = "#userId")
+    public List<Session> createSessions(Long userId, List<Session> sessions) {
+        // Строка состояния архива читается один раз на всю пачку
+        LocalDateTime writableFrom = archive.writableFrom();
+        for (Session session : sessions) {
+            requireHot(session, writableFrom);
+        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> ResourceNotFoundException.USER);
+        
+        for (Session session : sessions) {
+            // Присланный id превратил бы вставку в merge с отдельным SELECT
+            session.setId(null);
+            session.setUser(user);
+        }
+        
+        List<Session> savedSessions = sessionRepository.saveAll(sessions);
+        
+        sessionStore.putAll(savedSessions);
+        for (Session session : savedSessions) {
+            missingSessions.remove(session.getId());
+            invalidationBus.publish(missingSessions.getName(), session.getId());
+        }
+        counters.sessionsAdded(userId, savedSessions);
+        invalidateUser(userId);
+        
+        return savedSessions;
+    }
+    
+    @Transactional
+    @CacheEvict(cacheNames = USER_SESSIONS, allEntries = true)
     public void deleteSession(Long id) {
+        sessionRepository.findById(id).ifPresent(session -> {
+            Long userId = session.getUser().getId();
+            counters.sessionRemoved(userId, session);
+            invalidateUser(userId);
+        });
         sessionCache.remove(id);
+        sessionStore.remove(id);
         sessionRepository.deleteById(id);
+        invalidationBus.publish(sessionCache.getName(), id);
+    }
+    
+    /**
+     * Сессии пользователя, начатые в [from, to), по времени начала. Архив читается,
+     * только если диапазон заходит в архивные месяцы; в кэши архивные сессии не кладутся.
+     */
+    @Transactional(readOnly = true)
+    public List<Session> getUserSessionsBetween(Long userId, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new InvalidInputException("Range start must be before its end");
+        }
+        if (!userRepository.existsById(userId)) {
+            throw ResourceNotFoundException.USER;
+        }
+        
+        List<Session> sessions = new ArrayList<>();
+        LocalDateTime hotStart = archive.hotStart();
+        if (from.isBefore(hotStart)) {
+            sessions.addAll(archive.read(userId, from, to.isBefore(hotStart) ? to : hotStart));
+        }
+        if (to.isAfter(hotStart)) {
+            List<Session> hot = sessionRepository.findUserSessionsBetween(
+                    userId, from.isAfter(hotStart) ? from : hotStart, to);
+            cacheMissing(hot);
+            sessionStore.putAll(hot);
+            sessions.addAll(hot);
+        }
+        return sessions;
+    }
+    
+    /**
+     * Убирает из кэшей сессии удалённой архивом секции и снимки их пользователей.
+     * Первые страницы сессий пользователей начинаются со старых id и тоже сбрасываются.
+     */
+    @CacheEvict(cacheNames = USER_SESSIONS, allEntries = true)
+    public void forgetArchived(LongStream sessionIds, Collection<Long> userIds) {
+        sessionIds.forEach(id -> {
+            sessionCache.remove(id);
+            sessionStore.remove(id);
+            invalidationBus.publish(sessionCache.getName(), id);
+        });
+        userIds.forEach(this::invalidateUser);
+    }
+    
+    // Секция архивного месяца удаляется целиком: запись в неё потерялась бы
+    private static void requireHot(Session session, LocalDateTime writableFrom) {
+        if (session.getStartTime() != null && session.getStartTime().isBefore(writableFrom)) {
+            throw new InvalidInputException("Session start " + session.getStartTime()
+                    + " falls into an archived month");
+        }
     }
     
+    private void invalidateUser(long userId) {
+        userCache.remove(userId);
+        invalidationBus.publish(userCache.getName(), userId);
+    }
+    
+    @Transactional(readOnly = true)
     public List<Session> findUserSessionsFromToday(Long userId) {
         if (!userRepository.existsById(userId)) {
-            throw new ResourceNotFoundException("User not found");
+            throw ResourceNotFoundException.USER;
         }
         
         List<Session> sessions = sessionRepository.findUserSessionsFromToday(userId);
         
+        cacheMissing(sessions);
+        sessionStore.putAll(sessions);
+        
+        return sessions;
+    }
+    
+    private KeysetPage<Session> cachePage(KeysetPage<Session> page) {
+        cacheMissing(page.items());
+        sessionStore.putAll(page.items());
+        return page;
+    }
+    
+    // Уже закэшированные сессии не перезаписываются, чтобы не искажать их частоту
+    private void cacheMissing(List<Session> sessions) {
+        Map<Long, Session> cached = sessionCache.peekAll(sessions.stream().map(Session::getId).toList());
+        Map<Long, Session> missing = new HashMap<>();
         for (Session session : sessions) {
-            if (sessionCache.get(session.getId()) == null) {
-                sessionCache.put(session.getId(), session);
+            if (!cached.containsKey(session.getId())) {
+                missing.put(session.getId(), session);
             }
         }
-        
-        return sessions;
+        if (!missing.isEmpty()) {
+            sessionCache.putAll(missing);
+        }
+    }
+    
+    private static Map<Long, Session> byId(List<Session> sessions) {
+        Map<Long, Session> byId = new HashMap<>();
+        for (Session session : sessions) {
+            byId.put(session.getId(), session);
+        }
+        return byId;
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,37 @@
 package org.healthysleep.service;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.OffHeapSessionStore;
+import org.healthysleep.cache.SessionCache;
 import org.healthysleep.cache.UserCache;
+import org.healthysleep.cache.UserSnapshots;
 import org.healthysleep.exception.DuplicateEmailException;
+import org.healthysleep.exception.InvalidInputException;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Advice;
-import org.healthysleep.model.Session;
 import org.healthysleep.model.User;
+import org.healthysleep.model.UserSessionStats;
 import org.healthysleep.repository.AdviceRepository;
 import org.healthysleep.repository.SessionRepository;
+import org.healthysleep.repository.UserLink;
 import org.healthysleep.repository.UserRepository;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Slf4j
 @Service
@@ -23,30 +41,83 @@ public class UserService {
     private final AdviceRepository adviceRepository;
     private final SessionRepository sessionRepository;
     private final UserCache userCache;
+    private final SessionCache sessionCache;
+    private final OffHeapSessionStore sessionStore;
+    private final InvalidationBus invalidationBus;
+    private final AggregateCounterService counters;
     
     public UserService(UserRepository userRepository, AdviceRepository adviceRepository,
-                       SessionRepository sessionRepository, UserCache userCache) {
+                       SessionRepository sessionRepository, UserCache userCache,
+                       SessionCache sessionCache, OffHeapSessionStore sessionStore,
+                       InvalidationBus invalidationBus, AggregateCounterService counters) {
         this.userRepository = userRepository;
         this.adviceRepository = adviceRepository;
         this.sessionRepository = sessionRepository;
         this.userCache = userCache;
+        this.sessionCache = sessionCache;
+        this.sessionStore = sessionStore;
+        this.invalidationBus = invalidationBus;
+        this.counters = counters;
     }
     
-    public List<User> getAllUsers() {
-        List<User> users = userRepository.findAll();
-        for (User user : users) {
-            if (userCache.get(user.getId()) == null) {
-                userCache.put(user.getId(), user);
-            }
-        }
-        return users;
+    @Transactional(readOnly = true)
+    public KeysetPage<User> getAllUsers(Long cursor, int limit) {
+        List<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        return cachePage(KeysetPage.of(users, limit, User::getId));
     }
     
+    /**
+     * Возвращает отсоединённый снимок пользователя: советы и сессии в нём представлены
+     * только идентификаторами. Снимок разделяется между вызовами и не должен изменяться.
+     */
+    @Transactional(readOnly = true)
     public User getUserById(Long id) {
+        User cachedUser = userCache.get(id);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
         User user = userRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        userCache.put(id, user);
-        return user;
+                .orElseThrow(() -> ResourceNotFoundException.USER);
+        User snapshot = UserSnapshots.of(user, adviceRepository.findIdsByUserId(id),
+                sessionRepository.findIdsByUserId(id));
+        userCache.put(id, snapshot);
+        return snapshot;
+    }
+    
+    /**
+     * Снимки пользователей в порядке запрошенных id: промахи кэша загружаются
+     * пакетно через {@link #loadSnapshots(Collection)}. Несуществующие id пропускаются.
+     */
+    @Transactional(readOnly = true)
+    public List<User> getUsersByIds(List<Long> ids) {
+        Map<Long, User> found = new HashMap<>(userCache.getAll(ids));
+        List<Long> misses = ids.stream().distinct().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, User> loaded = new HashMap<>();
+            for (User snapshot : loadSnapshots(misses)) {
+                loaded.put(snapshot.getId(), snapshot);
+            }
+            userCache.putAll(loaded);
+            found.putAll(loaded);
+        }
+        return ids.stream().distinct().map(found::get).filter(Objects::nonNull).toList();
+    }
+    
+    /**
+     * Строит снимки сразу для набора пользователей тремя запросами, без обхода
+     * ленивых коллекций каждого. Отсутствующие id пропускаются.
+     */
+    public List<User> loadSnapshots(Collection<Long> ids) {
+        Map<Long, List<Long>> adviceIds = groupByUser(adviceRepository.findLinksByUserIds(ids));
+        Map<Long, List<Long>> sessionIds = groupByUser(sessionRepository.findLinksByUserIds(ids));
+        List<User> snapshots = new ArrayList<>();
+        for (User user : userRepository.findAllById(ids)) {
+            snapshots.add(UserSnapshots.of(user,
+                    adviceIds.getOrDefault(user.getId(), List.of()),
+                    sessionIds.getOrDefault(user.getId(), List.of())));
+        }
+        return snapshots;
     }
     
     public User createUser(User user) {
@@ -58,16 +129,23 @@ public class UserService {
         }
         user.setRole("USER");
         User savedUser = userRepository.save(user);
-        userCache.put(savedUser.getId(), savedUser);
+        userCache.put(savedUser.getId(), UserSnapshots.of(savedUser));
         return savedUser;
     }
     
+    @Transactional
+    @CacheEvict(cacheNames = SessionService.USER_SESSIONS, key = "#id")
     public void deleteUser(Long id) {
         userCache.remove(id);
+        List<Long> sessionIds = sessionRepository.findIdsByUserId(id);
+        counters.userDeleted(id, adviceRepository.findIdsByUserId(id));
         userRepository.deleteById(id);
+        forgetSessions(sessionIds);
+        invalidationBus.publish(userCache.getName(), id);
     }
     
     @Transactional
+    @CacheEvict(cacheNames = SessionService.USER_SESSIONS, key = "#id")
     public User updateUser(Long id, User user) {
         return userRepository.findById(id)
                 .map(existingUser -> {
@@ -75,12 +153,18 @@ public class UserService {
                     updateEmail(existingUser, user);
                     updateRole(existingUser, user);
                     updateSleepAdvices(existingUser, user);
-                    updateSleepSessions(existingUser, user);
+                    rejectSleepSessions(user);
                     User updatedUser = userRepository.save(existingUser);
-                    userCache.put(id, updatedUser);
+                    // Связь с советами - таблица пользователя, её коллекция совпадает с тем,
+                    // что запишет коммит. Сессии берутся из таблицы: ими владеет Session.
+                    // Снимок попадает в кэш после коммита
+                    cacheAfterCommit(id, UserSnapshots.of(updatedUser,
+                            idsOf(updatedUser.getSleepAdvices(), Advice::getId),
+                            sessionRepository.findIdsByUserId(id)));
+                    invalidationBus.publish(userCache.getName(), id);
                     return updatedUser;
                 })
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+                .orElseThrow(() -> ResourceNotFoundException.USER);
     }
     
     public void updateUsername(User existingUser, User newUser) {
@@ -107,47 +191,98 @@ public class UserService {
     
     public void updateSleepAdvices(User existingUser, User newUser) {
         if (newUser.getSleepAdvices() != null && !newUser.getSleepAdvices().isEmpty()) {
-            existingUser.getSleepAdvices().clear();
-            for (Advice advice : newUser.getSleepAdvices()) {
-                Advice existingAdvice = adviceRepository.findById(advice.getId()).orElseThrow(()
-                        -> new ResourceNotFoundException("Sleep advice is not found."));
-                existingUser.getSleepAdvices().add(existingAdvice);
-            }
+            Set<Long> before = idsOf(existingUser.getSleepAdvices(), Advice::getId);
+            reconcile(existingUser.getSleepAdvices(), newUser.getSleepAdvices(), Advice::getId,
+                    adviceRepository::findAllById, "Sleep advices");
+            Set<Long> after = idsOf(existingUser.getSleepAdvices(), Advice::getId);
+            counters.adviceLinksAdded(after.stream().filter(id -> !before.contains(id)).toList());
+            counters.adviceLinksRemoved(before.stream().filter(id -> !after.contains(id)).toList());
         }
     }
     
-    public void updateSleepSessions(User existingUser, User newUser) {
+    // Сессия владеет связью через user_id: сессии создаются и удаляются через /api/sessions
+    public void rejectSleepSessions(User newUser) {
         if (newUser.getSleepSessions() != null && !newUser.getSleepSessions().isEmpty()) {
-            existingUser.getSleepSessions().clear();
-            for (Session session : newUser.getSleepSessions()) {
-                Session existingSession = sessionRepository.findById(session.getId())
-                        .orElseThrow(() ->
-                                new ResourceNotFoundException("Sleep session not found"));
-                existingUser.getSleepSessions().add(existingSession);
-            }
+            throw new InvalidInputException("Sleep sessions are changed through /api/sessions, "
+                    + "not through the user");
         }
     }
-
-    public List<User> getUsersWithoutSessions() {
-        List<User> users = userRepository.findUsersWithoutSessions();
-        for (User user : users) {
-            if (userCache.get(user.getId()) == null) {
-                userCache.put(user.getId(), user);
+    
+    /**
+     * Приводит коллекцию к запрошенному набору id. Недостающие сущности читаются
+     * одним запросом, а коллекция меняется только на разницу: Hibernate пишет
+     * лишь изменившиеся строки связи вместо удаления и вставки всех.
+     */
+    private static <T> void reconcile(Set<T> current, Set<T> requested, Function<T, Long> idOf,
+                                      Function<List<Long>, List<T>> loader, String entityName) {
+        Set<Long> requestedIds = idsOf(requested, idOf);
+        Set<Long> currentIds = idsOf(current, idOf);
+        List<Long> addedIds = requestedIds.stream()
+                .filter(id -> !currentIds.contains(id))
+                .toList();
+        List<T> added = List.of();
+        if (!addedIds.isEmpty()) {
+            if (addedIds.contains(null)) {
+                throw new InvalidInputException(entityName + " must have ids");
+            }
+            added = loader.apply(addedIds);
+            if (added.size() != addedIds.size()) {
+                Set<Long> missing = new TreeSet<>(addedIds);
+                added.forEach(entity -> missing.remove(idOf.apply(entity)));
+                throw new ResourceNotFoundException(entityName + " not found: " + missing);
             }
         }
-        return users;
+        current.removeIf(entity -> !requestedIds.contains(idOf.apply(entity)));
+        current.addAll(added);
+    }
+    
+    private static <T> Set<Long> idsOf(Set<T> entities, Function<T, Long> idOf) {
+        Set<Long> ids = new HashSet<>();
+        for (T entity : entities) {
+            ids.add(idOf.apply(entity));
+        }
+        return ids;
+    }
+    
+    @Transactional(readOnly = true)
+    public UserSessionStats getSessionStats(Long id) {
+        if (!userRepository.existsById(id)) {
+            throw ResourceNotFoundException.USER;
+        }
+        return counters.getSessionStats(id);
     }
 
-    public List<User> getUsersWithoutAdvices() {
-        List<User> users = userRepository.findUsersWithoutAdvices();
-        for (User user : users) {
-            if (userCache.get(user.getId()) == null) {
-                userCache.put(user.getId(), user);
-            }
+    @Transactional(readOnly = true)
+    public KeysetPage<User> getUsersWithoutSessions(Long cursor, int limit) {
+        List<User> users = userRepository.findUsersWithoutSessions(
+                KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        return cachePage(KeysetPage.of(users, limit, User::getId));
+    }
+
+    @Transactional(readOnly = true)
+    public KeysetPage<User> getUsersWithoutAdvices(Long cursor, int limit) {
+        List<User> users = userRepository.findUsersWithoutAdvices(
+                KeysetPage.after(cursor), KeysetPage.fetchLimit(limit));
+        return cachePage(KeysetPage.of(users, limit, User::getId));
+    }
+    
+    /**
+     * Коллекции страницы загружаются двумя запросами с графами сущностей в тот же
+     * контекст, поэтому чтение страницы стоит три запроса при любом её размере,
+     * а сериализация не обращается к базе.
+     */
+    private KeysetPage<User> cachePage(KeysetPage<User> page) {
+        if (!page.items().isEmpty()) {
+            List<Long> ids = page.items().stream().map(User::getId).toList();
+            userRepository.fetchSleepAdvices(ids);
+            userRepository.fetchSleepSessions(ids);
         }
-        return users;
+        cacheSnapshots(page.items());
+        return page;
     }
     
+    // Счётчики меняются только внутри транзакции, изменившей связи
+    @Transactional
     public User addAdvicesToUser(Long userId, List<Long> adviceIds) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() ->
@@ -159,9 +294,16 @@ public class UserService {
             throw new ResourceNotFoundException("Some advices not found");
         }
         
+        List<Long> addedIds = advices.stream()
+                .filter(advice -> !user.getSleepAdvices().contains(advice))
+                .map(Advice::getId)
+                .toList();
         user.getSleepAdvices().addAll(advices);
-        userCache.put(userId, user);
-        return userRepository.save(user);
+        counters.adviceLinksAdded(addedIds);
+        User savedUser = userRepository.save(user);
+        userCache.remove(userId);
+        invalidationBus.publish(userCache.getName(), userId);
+        return savedUser;
     }
     
     @Transactional
@@ -178,7 +320,72 @@ public class UserService {
             throw new IllegalArgumentException("User does not have this advice");
         }
         user.getSleepAdvices().remove(advice);
-        userCache.put(userId, user);
+        counters.adviceLinksRemoved(List.of(adviceId));
         userRepository.save(user);
+        userCache.remove(userId);
+        invalidationBus.publish(userCache.getName(), userId);
+    }
+    
+    /**
+     * Сессии удалённого пользователя уходят каскадом, а хранилище вне кучи не знает
+     * срока жизни: без сброса строки жили бы там до вытеснения. Другие узлы сбрасывают
+     * их по инвалидациям кэша сессий; свой узел повторяет сброс после коммита, так как
+     * чтение до коммита могло вернуть удаляемые строки в кэши.
+     */
+    private void forgetSessions(List<Long> sessionIds) {
+        Runnable forget = () -> sessionIds.forEach(sessionId -> {
+            sessionCache.remove(sessionId);
+            sessionStore.remove(sessionId);
+        });
+        forget.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    forget.run();
+                }
+            });
+        }
+        sessionIds.forEach(sessionId -> invalidationBus.publish(sessionCache.getName(), sessionId));
+    }
+    
+    /**
+     * До коммита снимок видели бы чтения, для которых изменений ещё нет, а после
+     * отката он остался бы в кэше. Вне транзакции кладётся сразу.
+     */
+    private void cacheAfterCommit(Long id, User snapshot) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            userCache.put(id, snapshot);
+            return;
+        }
+        userCache.remove(id);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userCache.put(id, snapshot);
+            }
+        });
+    }
+    
+    private static Map<Long, List<Long>> groupByUser(List<UserLink> links) {
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        for (UserLink link : links) {
+            grouped.computeIfAbsent(link.getUserId(), key -> new ArrayList<>()).add(link.getLinkedId());
+        }
+        return grouped;
+    }
+    
+    // Списочные запросы не загружают коллекции, поэтому кэшируются только полные снимки
+    private void cacheSnapshots(List<User> users) {
+        Map<Long, User> cached = userCache.peekAll(users.stream().map(User::getId).toList());
+        Map<Long, User> missing = new HashMap<>();
+        for (User user : users) {
+            if (!cached.containsKey(user.getId()) && UserSnapshots.isLoaded(user)) {
+                missing.put(user.getId(), UserSnapshots.of(user));
+            }
+        }
+        if (!missing.isEmpty()) {
+            userCache.putAll(missing);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+-- Подготовка таблицы sessions к архивации (sessions.archive.enabled: true). Не входит
+-- в миграции при старте: скрипт копирует всю таблицу (смена ключа и секционирование),
+-- поэтому выполняется вручную один раз до включения архивации - в окно обслуживания
+-- или через pt-online-schema-change. Без него архиватор ничего не выгружает.
+
+-- Секционированные таблицы InnoDB не поддерживают внешние ключи: связь с users
+-- держит приложение (каскад JPA). Ключ создан Hibernate или миграцией V5, имя ищется
+SET @drop_fk = (SELECT CONCAT('ALTER TABLE sessions DROP FOREIGN KEY ', constraint_name)
+                FROM information_schema.table_constraints
+                WHERE table_schema = DATABASE() AND table_name = 'sessions'
+                  AND constraint_type = 'FOREIGN KEY'
+                LIMIT 1);
+SET @drop_fk = COALESCE(@drop_fk, 'DO 0');
+PREPARE drop_fk FROM @drop_fk;
+EXECUTE drop_fk;
+DEALLOCATE PREPARE drop_fk;
+
+-- Ключ секционирования обязан входить в первичный ключ
+ALTER TABLE sessions DROP PRIMARY KEY, ADD PRIMARY KEY (id, start_time);
+
+-- Помесячные секции выделяет из pmax SessionPartitions при запуске архиватора
+ALTER TABLE sessions PARTITION BY RANGE COLUMNS (start_time) (
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
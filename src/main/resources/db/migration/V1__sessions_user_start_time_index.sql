@@ -0,0 +1,4 @@
+-- Сессии пользователя с сегодняшнего дня (findUserSessionsFromToday), проверка наличия
+-- сессий у пользователя и пересчёт user_session_stats читают только этот индекс:
+-- в нём есть все столбцы сессии, id добавляет InnoDB
+CREATE INDEX idx_sessions_user_start_end ON sessions (user_id, start_time, end_time);
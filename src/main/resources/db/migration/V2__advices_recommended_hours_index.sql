@@ -0,0 +1,2 @@
+-- Выборки findAllByRecommendedHours, ...GreaterThan и ...LessThan - диапазон по индексу
+CREATE INDEX idx_advices_recommended_hours ON advices (recommended_hours);
@@ -0,0 +1,10 @@
+-- Итоги по пользователю за архивные месяцы: сверка счётчиков сессий учитывает
+-- и сессии, которых уже нет в таблице. Пока архивация выключена, таблица пуста
+CREATE TABLE session_archive_totals (
+    user_id BIGINT NOT NULL,
+    month DATE NOT NULL,
+    session_count BIGINT NOT NULL,
+    total_minutes BIGINT NOT NULL,
+    last_start DATETIME(6) NOT NULL,
+    PRIMARY KEY (user_id, month)
+);
@@ -0,0 +1,9 @@
+-- Граница архива общая для всех узлов; строка должна существовать заранее, чтобы
+-- запись сессий могла взять на неё разделяемую блокировку
+CREATE TABLE IF NOT EXISTS session_archive_state (
+    id BIGINT NOT NULL PRIMARY KEY,
+    oldest_month DATE NULL,
+    first_hot_month DATE NULL,
+    first_writable_month DATE NULL
+);
+INSERT IGNORE INTO session_archive_state (id) VALUES (1);
@@ -0,0 +1,18 @@
+-- Постраничное чтение сессий пользователя (findByUserIdAndIdGreaterThanOrderByIdAsc):
+-- диапазон по id внутри пользователя без сортировки. Индекс же держит внешний ключ
+CREATE INDEX idx_sessions_user_id ON sessions (user_id, id);
+
+-- Внешний ключ на users ведёт эта миграция, а не Hibernate: его снимает только
+-- db/archive/partition_sessions_by_month.sql при включении архивации. В старых
+-- схемах ключ уже создан Hibernate, в уже секционированной таблице он невозможен
+SET @add_fk = IF(EXISTS (SELECT 1 FROM information_schema.table_constraints
+                         WHERE table_schema = DATABASE() AND table_name = 'sessions'
+                           AND constraint_type = 'FOREIGN KEY')
+                 OR EXISTS (SELECT 1 FROM information_schema.partitions
+                            WHERE table_schema = DATABASE() AND table_name = 'sessions'
+                              AND partition_name IS NOT NULL),
+                 'DO 0',
+                 'ALTER TABLE sessions ADD CONSTRAINT fk_sessions_user FOREIGN KEY (user_id) REFERENCES users (id)');
+PREPARE add_fk FROM @add_fk;
+EXECUTE add_fk;
+DEALLOCATE PREPARE add_fk;
@@ -0,0 +1,82 @@
+package org.healthysleep.aspect;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.Signature;
+import org.healthysleep.exception.InvalidInputException;
+import org.healthysleep.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LoggingAspectTest {
+
+    @Mock
+    private JoinPoint joinPoint;
+
+    @Mock
+    private Signature signature;
+
+    private final LoggingAspect aspect = new LoggingAspect();
+    private final Logger logger = (Logger) LoggerFactory.getLogger(LoggingAspect.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(signature.toShortString()).thenReturn("UserService.getUserById(..)");
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.DEBUG);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(previousLevel);
+    }
+
+    @Test
+    void logAfterThrowing_WhenResourceNotFound_ShouldLogDebugWithoutThrowable() {
+        // Act
+        aspect.logAfterThrowing(joinPoint, ResourceNotFoundException.USER);
+
+        // Assert
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.DEBUG, appender.list.get(0).getLevel());
+        assertNull(appender.list.get(0).getThrowableProxy());
+    }
+
+    @Test
+    void logAfterThrowing_WhenInvalidInput_ShouldLogDebugWithoutThrowable() {
+        // Act
+        aspect.logAfterThrowing(joinPoint, new InvalidInputException("Range start must be before its end"));
+
+        // Assert
+        assertEquals(Level.DEBUG, appender.list.get(0).getLevel());
+        assertNull(appender.list.get(0).getThrowableProxy());
+    }
+
+    @Test
+    void logAfterThrowing_WhenUnexpectedException_ShouldLogErrorWithStackTrace() {
+        // Act
+        aspect.logAfterThrowing(joinPoint, new IllegalStateException("boom"));
+
+        // Assert
+        assertEquals(Level.ERROR, appender.list.get(0).getLevel());
+        assertNotNull(appender.list.get(0).getThrowableProxy());
+    }
+}
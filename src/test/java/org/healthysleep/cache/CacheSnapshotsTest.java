@@ -0,0 +1,41 @@
+package org.healthysleep.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSnapshotsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_ThenRead_ShouldRoundTripKeys() throws IOException {
+        // Arrange
+        Path file = directory.resolve("nested").resolve("users.snapshot");
+        List<KeyFrequency> keys = List.of(new KeyFrequency(42L, 9), new KeyFrequency(0L, 1));
+
+        // Act
+        CacheSnapshots.write(file, keys);
+        List<KeyFrequency> restored = CacheSnapshots.read(file);
+
+        // Assert
+        assertEquals(keys, restored);
+        assertFalse(Files.exists(directory.resolve("nested").resolve("users.snapshot.tmp")));
+    }
+
+    @Test
+    void read_WhenNotASnapshot_ShouldThrow() throws IOException {
+        // Arrange
+        Path file = directory.resolve("broken.snapshot");
+        Files.writeString(file, "not a snapshot at all");
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> CacheSnapshots.read(file));
+    }
+}
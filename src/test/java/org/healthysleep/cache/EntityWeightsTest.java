@@ -0,0 +1,29 @@
+package org.healthysleep.cache;
+
+import java.util.List;
+import java.util.stream.LongStream;
+import org.healthysleep.model.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityWeightsTest {
+
+    @Test
+    void user_ShouldWeighSnapshotSessionsAsIdStubs() {
+        // Arrange
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("sleeper");
+        List<Long> sessionIds = LongStream.rangeClosed(1, 500).boxed().toList();
+        User empty = UserSnapshots.of(user, List.of(), List.of());
+        User withSessions = UserSnapshots.of(user, List.of(), sessionIds);
+
+        // Act
+        int perSession = (EntityWeights.user(withSessions) - EntityWeights.user(empty)) / sessionIds.size();
+
+        // Assert
+        // Заголовок и поля заглушки, Long id и запись множества - без дат полной сессии
+        assertEquals(96, perSession);
+    }
+}
@@ -0,0 +1,39 @@
+package org.healthysleep.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void increment_ShouldRaiseEstimatedFrequency() {
+        // Arrange
+        FrequencySketch sketch = new FrequencySketch(64);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42L);
+        }
+
+        // Assert
+        assertEquals(5, sketch.frequency(42L));
+        assertEquals(0, sketch.frequency(43L));
+    }
+
+    @Test
+    void increment_WhenSampleSizeReached_ShouldHalveCounters() {
+        // Arrange
+        FrequencySketch sketch = new FrequencySketch(1);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(7L);
+        }
+
+        // Act
+        boolean aged = sketch.increment(8L) | sketch.increment(8L);
+
+        // Assert
+        assertTrue(aged);
+        assertEquals(4, sketch.frequency(7L));
+    }
+}
@@ -0,0 +1,101 @@
+package org.healthysleep.cache;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationBusTest {
+
+    private static LfuCache<String> cacheNamed(String name) {
+        return new LfuCache<>(CacheSpec.<String>maximumSize(16).name(name).concurrencyLevel(1)) {
+        };
+    }
+
+    private static void awaitAbsent(LfuCache<String> cache, long id) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (cache.get(id) != null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void publish_InProcess_ShouldInvalidateOtherNodesOnly() {
+        // Arrange
+        InProcessInvalidationTransport transport = new InProcessInvalidationTransport();
+        LfuCache<String> local = cacheNamed("users");
+        LfuCache<String> remote = cacheNamed("users");
+        LfuCache<String> otherCache = cacheNamed("advices");
+        local.put(1L, "fresh");
+        remote.put(1L, "stale");
+        otherCache.put(1L, "advice");
+        try (InvalidationBus localBus = new InvalidationBus(transport, 64, Duration.ofMinutes(1));
+             InvalidationBus remoteBus = new InvalidationBus(transport, 64, Duration.ofMinutes(1))) {
+            localBus.start();
+            remoteBus.start();
+            localBus.register(local);
+            remoteBus.register(remote);
+            remoteBus.register(otherCache);
+
+            // Act
+            localBus.publish("users", 1L);
+            localBus.flush();
+
+            // Assert
+            assertEquals("fresh", local.get(1L));
+            assertNull(remote.get(1L));
+            assertEquals("advice", otherCache.get(1L));
+        }
+    }
+
+    @Test
+    void publish_WhenBatchIsFull_ShouldFlushWithoutWaitingForInterval() throws InterruptedException {
+        // Arrange
+        InProcessInvalidationTransport transport = new InProcessInvalidationTransport();
+        LfuCache<String> remote = cacheNamed("sessions");
+        remote.put(1L, "one");
+        remote.put(2L, "two");
+        try (InvalidationBus localBus = new InvalidationBus(transport, 2, Duration.ofMinutes(1));
+             InvalidationBus remoteBus = new InvalidationBus(transport, 2, Duration.ofMinutes(1))) {
+            localBus.start();
+            remoteBus.start();
+            remoteBus.register(remote);
+
+            // Act
+            localBus.publish("sessions", 1L);
+            localBus.publish("sessions", 2L);
+            awaitAbsent(remote, 2L);
+
+            // Assert
+            assertNull(remote.get(1L));
+            assertNull(remote.get(2L));
+        }
+    }
+
+    @Test
+    void publish_OverLoopbackSocket_ShouldReachPeer() throws InterruptedException {
+        // Arrange
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        SocketInvalidationTransport receiver = new SocketInvalidationTransport(loopback, 0, List.of());
+        SocketInvalidationTransport sender = new SocketInvalidationTransport(loopback, 0,
+                List.of(new InetSocketAddress(loopback, receiver.getLocalPort())));
+        LfuCache<String> remote = cacheNamed("advices");
+        remote.put(42L, "stale");
+        try (InvalidationBus senderBus = new InvalidationBus(sender, 64, Duration.ofMillis(20));
+             InvalidationBus receiverBus = new InvalidationBus(receiver, 64, Duration.ofMillis(20))) {
+            senderBus.start();
+            receiverBus.start();
+            receiverBus.register(remote);
+
+            // Act
+            senderBus.publish("advices", 42L);
+            awaitAbsent(remote, 42L);
+
+            // Assert
+            assertNull(remote.get(42L));
+        }
+    }
+}
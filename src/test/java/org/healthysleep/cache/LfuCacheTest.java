@@ -0,0 +1,541 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LfuCacheTest {
+
+    private static LfuCache<String> cacheOf(int capacity) {
+        return new LfuCache<>(capacity, 1) {
+        };
+    }
+
+    @Test
+    void put_WhenFull_ShouldEvictLeastFrequentlyUsed() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+
+        // Act
+        cache.put(3L, "three");
+        cache.put(3L, "three");
+
+        // Assert
+        assertEquals("one", cache.get(1L));
+        assertNull(cache.get(2L));
+        assertEquals("three", cache.get(3L));
+    }
+
+    @Test
+    void put_InStaleReplicaTransaction_ShouldSkipValue() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        TransactionSynchronizationManager.initSynchronization();
+        String loaded;
+        try {
+            StaleReads.markCurrentTransaction();
+
+            // Act
+            cache.put(1L, "one");
+            cache.putAll(Map.of(2L, "two"));
+            loaded = cache.getOrLoad(3L, id -> "three");
+        } finally {
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_COMMITTED));
+            TransactionSynchronizationManager.clear();
+        }
+
+        // Assert
+        assertEquals("three", loaded);
+        assertFalse(StaleReads.inCurrentTransaction());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_WhenFrequenciesEqual_ShouldEvictOldestEntry() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        // Act
+        cache.put(3L, "three");
+        cache.put(3L, "three");
+
+        // Assert
+        assertNull(cache.get(1L));
+        assertEquals("two", cache.get(2L));
+    }
+
+    @Test
+    void put_WhenCandidateIsNotMoreFrequent_ShouldRejectIt() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.get(2L);
+
+        // Act
+        cache.put(3L, "three");
+
+        // Assert
+        assertNull(cache.get(3L));
+        assertEquals("one", cache.get(1L));
+        assertEquals("two", cache.get(2L));
+    }
+
+    @Test
+    void put_ScanOfOneHitKeys_ShouldKeepHotEntriesResident() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(4);
+        for (long key = 1; key <= 4; key++) {
+            cache.put(key, "hot-" + key);
+            cache.get(key);
+            cache.get(key);
+        }
+
+        // Act
+        for (long key = 100; key < 120; key++) {
+            cache.put(key, "cold-" + key);
+        }
+
+        // Assert
+        for (long key = 1; key <= 4; key++) {
+            assertEquals("hot-" + key, cache.get(key));
+        }
+    }
+
+    @Test
+    void put_ExistingKey_ShouldUpdateValueWithoutEviction() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        // Act
+        cache.put(1L, "uno");
+
+        // Assert
+        assertEquals("uno", cache.get(1L));
+        assertEquals("two", cache.get(2L));
+    }
+
+    @Test
+    void remove_ShouldFreeSlotAndKeepFrequencyOrder() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(2L);
+
+        // Act
+        cache.remove(1L);
+        cache.put(3L, "three");
+        cache.put(4L, "four");
+        cache.put(4L, "four");
+
+        // Assert
+        assertNull(cache.get(3L));
+        assertEquals("two", cache.get(2L));
+        assertEquals("four", cache.get(4L));
+    }
+
+    @Test
+    void primitiveKeys_ShouldSurviveGrowthAndRemovals() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(1_000);
+        for (long key = 0; key < 1_000; key++) {
+            cache.put(key, "value-" + key);
+        }
+
+        // Act
+        for (long key = 0; key < 1_000; key += 3) {
+            cache.remove(key);
+        }
+
+        // Assert
+        assertEquals(666, cache.size());
+        for (long key = 0; key < 1_000; key++) {
+            if (key % 3 == 0) {
+                assertNull(cache.get(key));
+            } else {
+                assertEquals("value-" + key, cache.get(key));
+            }
+        }
+    }
+
+    @Test
+    void concurrentAccess_ShouldStayWithinCapacity() throws Exception {
+        // Arrange
+        LfuCache<String> cache = new LfuCache<>(256, 8) {
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    long key = random.nextLong(1_000);
+                    if (cache.get(key) == null) {
+                        cache.put(key, "value-" + key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Assert
+        assertTrue(cache.size() <= 256);
+        assertTrue(cache.size() > 0);
+    }
+
+    @Test
+    void get_AfterWriteExpiration_ShouldMiss() {
+        // Arrange
+        AtomicLong ticker = new AtomicLong();
+        LfuCache<String> cache = new LfuCache<>(CacheSpec.<String>maximumSize(4)
+                .expireAfterWrite(Duration.ofSeconds(10)).concurrencyLevel(1).ticker(ticker::get)) {
+        };
+        cache.put(1L, "one");
+
+        // Act
+        ticker.addAndGet(Duration.ofSeconds(9).toNanos());
+        String beforeExpiry = cache.get(1L);
+        ticker.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        // Assert
+        assertEquals("one", beforeExpiry);
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    void put_ShouldReclaimAccessExpiredEntriesIncrementally() {
+        // Arrange
+        AtomicLong ticker = new AtomicLong();
+        LfuCache<String> cache = new LfuCache<>(CacheSpec.<String>maximumSize(8)
+                .expireAfterAccess(Duration.ofSeconds(10)).concurrencyLevel(1).ticker(ticker::get)) {
+        };
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        ticker.addAndGet(Duration.ofSeconds(5).toNanos());
+        cache.get(1L);
+
+        // Act
+        ticker.addAndGet(Duration.ofSeconds(6).toNanos());
+        cache.put(3L, "three");
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(1L));
+        assertNull(cache.get(2L));
+    }
+
+    @Test
+    void put_WhenWeightExceeded_ShouldEvictUntilCandidateFits() {
+        // Arrange
+        LfuCache<String> cache = new LfuCache<>(CacheSpec.<String>maximumWeight(10, String::length)
+                .concurrencyLevel(1)) {
+        };
+        cache.put(1L, "aaaa");
+        cache.put(2L, "bbbb");
+        cache.get(2L);
+
+        // Act
+        cache.put(3L, "cccccc");
+        cache.put(3L, "cccccc");
+
+        // Assert
+        assertNull(cache.get(1L));
+        assertEquals("cccccc", cache.get(3L));
+        assertTrue(cache.weightedSize() <= 10);
+    }
+
+    @Test
+    void put_WhenEntryHeavierThanCache_ShouldNotStoreIt() {
+        // Arrange
+        LfuCache<String> cache = new LfuCache<>(CacheSpec.<String>maximumWeight(4, String::length)
+                .concurrencyLevel(1)) {
+        };
+
+        // Act
+        cache.put(1L, "too long");
+
+        // Assert
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void stats_ShouldCountOperationsWithoutLogging() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(1);
+        cache.put(1L, "one");
+        cache.get(1L);
+        cache.get(2L);
+        cache.put(2L, "two");
+        cache.put(2L, "two");
+        cache.put(2L, "two");
+        cache.remove(2L);
+
+        // Act
+        CacheStats.Snapshot stats = cache.stats();
+
+        // Assert
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRatio());
+        assertEquals(4, stats.puts());
+        assertEquals(2, stats.rejections());
+        assertEquals(1, stats.evictions());
+        assertEquals(1, stats.removals());
+        assertEquals(2, stats.getLatency().count());
+        assertEquals(0, stats.size());
+    }
+
+    @Test
+    void getOrLoad_ConcurrentMisses_ShouldRunLoaderOnce() throws Exception {
+        // Arrange
+        LfuCache<String> cache = cacheOf(16);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> cache.getOrLoad(5L, key -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "loaded-" + key;
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("loaded-5", future.get());
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertEquals("loaded-5", cache.get(5L));
+    }
+
+    @Test
+    void getOrLoad_WhenLoaderFails_ShouldPropagateAndNotCache() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(16);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> cache.getOrLoad(1L, key -> {
+            throw new IllegalStateException("missing");
+        }));
+        assertEquals("retry", cache.getOrLoad(1L, key -> "retry"));
+    }
+
+    @Test
+    void getOrLoad_WhenRemovedDuringLoad_ShouldReturnButNotCacheValue() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(16);
+
+        // Act
+        String loaded = cache.getOrLoad(1L, key -> {
+            cache.remove(key);
+            return "stale";
+        });
+
+        // Assert
+        assertEquals("stale", loaded);
+        assertNull(cache.get(1L));
+        assertEquals("fresh", cache.getOrLoad(1L, key -> "fresh"));
+        assertEquals("fresh", cache.get(1L));
+    }
+
+    @Test
+    void getOrLoad_WhenClearedDuringLoad_ShouldNotCacheValue() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(16);
+
+        // Act
+        cache.getOrLoad(1L, key -> {
+            cache.clear();
+            return "stale";
+        });
+
+        // Assert
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    void getAll_ShouldReturnOnlyHitsAndCountMisses() {
+        // Arrange
+        LfuCache<String> cache = new LfuCache<>(CacheSpec.<String>maximumSize(256).concurrencyLevel(4)) {
+        };
+        cache.putAll(Map.of(1L, "one", 2L, "two", 300L, "three hundred"));
+
+        // Act
+        Map<Long, String> found = cache.getAll(List.of(1L, 300L, 5L, 1L));
+
+        // Assert
+        assertEquals(Map.of(1L, "one", 300L, "three hundred"), found);
+        CacheStats.Snapshot stats = cache.stats();
+        assertEquals(3, stats.puts());
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    void peekAll_ShouldNotRecordFrequencyOrStats() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(2L);
+
+        // Act
+        Map<Long, String> found = cache.peekAll(List.of(1L, 5L));
+        cache.peekAll(List.of(1L));
+        cache.peekAll(List.of(1L));
+        cache.put(3L, "three");
+        cache.put(3L, "three");
+
+        // Assert
+        assertEquals(Map.of(1L, "one"), found);
+        assertNull(cache.get(1L));
+        assertEquals("two", cache.get(2L));
+        CacheStats.Snapshot stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    void putAll_ShouldApplyAdmissionLikePut() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.get(2L);
+
+        // Act
+        cache.putAll(Map.of(3L, "three", 4L, "four"));
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(1L));
+        assertEquals("two", cache.get(2L));
+    }
+
+    @Test
+    void hottestKeys_ShouldOrderByFrequencyDescending() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(8);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.put(3L, "three");
+        cache.put(2L, "two");
+        cache.put(2L, "two");
+        cache.put(3L, "three");
+
+        // Act
+        List<KeyFrequency> keys = cache.hottestKeys(2);
+
+        // Assert
+        assertEquals(List.of(new KeyFrequency(2L, 3), new KeyFrequency(3L, 2)), keys);
+    }
+
+    @Test
+    void restore_ShouldKeepRestoredFrequencyAndNotEvict() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+
+        // Act
+        boolean hot = cache.restore(1L, "hot", 5);
+        boolean warm = cache.restore(2L, "warm", 2);
+        boolean overflow = cache.restore(3L, "cold", 1);
+        cache.put(4L, "new");
+
+        // Assert
+        assertTrue(hot);
+        assertTrue(warm);
+        assertFalse(overflow);
+        assertEquals(List.of(new KeyFrequency(1L, 5), new KeyFrequency(2L, 2)), cache.hottestKeys(10));
+        assertNull(cache.get(4L));
+    }
+
+    @Test
+    void resize_WhenShrunk_ShouldEvictLeastFrequentlyUsed() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(3);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.put(3L, "three");
+        cache.get(1L);
+        cache.get(3L);
+
+        // Act
+        cache.resize(2);
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMaxCapacity());
+        assertNull(cache.get(2L));
+        assertEquals("one", cache.get(1L));
+    }
+
+    @Test
+    void resize_WhenGrown_ShouldAcceptMoreEntries() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(1);
+        cache.put(1L, "one");
+
+        // Act
+        cache.resize(2);
+        cache.put(2L, "two");
+
+        // Assert
+        assertEquals("one", cache.get(1L));
+        assertEquals("two", cache.get(2L));
+        assertThrows(IllegalArgumentException.class, () -> cache.resize(0));
+    }
+
+    @Test
+    void clear_ShouldDropAllEntries() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(2);
+        cache.put(1L, "one");
+
+        // Act
+        cache.clear();
+
+        // Assert
+        assertNull(cache.get(1L));
+    }
+}
@@ -0,0 +1,123 @@
+package org.healthysleep.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LfuSpringCacheTest {
+
+    private static Cache cacheNamed(String name) {
+        LfuCacheManager manager = new LfuCacheManager(Map.of(name,
+                CacheSpec.<Object>maximumSize(16).expireAfterWrite(Duration.ofMinutes(1))));
+        return manager.getCache(name);
+    }
+
+    @Test
+    void put_ThenGet_ShouldReturnValueForEqualKey() {
+        // Arrange
+        Cache cache = cacheNamed("advices-by-hours");
+
+        // Act
+        cache.put(8, List.of("advice"));
+
+        // Assert
+        assertEquals("advices-by-hours", cache.getName());
+        assertEquals(List.of("advice"), cache.get(8, List.class));
+        assertNull(cache.get(9));
+    }
+
+    @Test
+    void get_WhenHashCollides_ShouldTreatOtherKeyAsMiss() {
+        // Arrange
+        Cache cache = cacheNamed("collisions");
+        assertEquals(LfuSpringCache.hash("Aa"), LfuSpringCache.hash("BB"));
+        cache.put("Aa", "first");
+
+        // Act & Assert
+        assertNull(cache.get("BB"));
+        assertEquals("second", cache.get("BB", () -> "second"));
+        assertEquals("second", cache.get("BB", String.class));
+    }
+
+    @Test
+    void get_WithLoader_ShouldCacheNullAndLoadOnce() {
+        // Arrange
+        Cache cache = cacheNamed("user-sessions");
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        Object first = cache.get(1L, () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        Cache.ValueWrapper second = cache.get(1L);
+
+        // Assert
+        assertNull(first);
+        assertNotNull(second);
+        assertNull(second.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void evictAndClear_ShouldDropEntries() {
+        // Arrange
+        Cache cache = cacheNamed("advices-above-hours");
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        // Act
+        cache.evict(1);
+        Cache.ValueWrapper afterEvict = cache.get(1);
+        cache.clear();
+
+        // Assert
+        assertNull(afterEvict);
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    void evictAndClear_WithBus_ShouldDropEntriesOnOtherNodes() throws InterruptedException {
+        // Arrange
+        InProcessInvalidationTransport transport = new InProcessInvalidationTransport();
+        Map<String, CacheSpec<Object>> specs = Map.of("user-sessions", CacheSpec.maximumSize(16));
+        try (InvalidationBus localBus = new InvalidationBus(transport, 64, Duration.ofMinutes(1));
+             InvalidationBus remoteBus = new InvalidationBus(transport, 64, Duration.ofMinutes(1))) {
+            localBus.start();
+            remoteBus.start();
+            Cache local = new LfuCacheManager(specs, localBus).getCache("user-sessions");
+            Cache remote = new LfuCacheManager(Map.of("user-sessions", CacheSpec.maximumSize(16)), remoteBus)
+                    .getCache("user-sessions");
+            remote.put(1L, "one");
+            remote.put(2L, "two");
+
+            // Act
+            local.evict(1L);
+            localBus.flush();
+            Cache.ValueWrapper afterEvict = remote.get(1L);
+            Cache.ValueWrapper untouched = remote.get(2L);
+            local.clear();
+            localBus.flush();
+
+            // Assert
+            assertNull(afterEvict);
+            assertNotNull(untouched);
+            assertNull(remote.get(2L));
+        }
+    }
+
+    @Test
+    void getCache_WhenNotConfigured_ShouldReturnNull() {
+        // Arrange
+        LfuCacheManager manager = new LfuCacheManager(Map.of());
+
+        // Act & Assert
+        assertNull(manager.getCache("unknown"));
+        assertTrue(manager.getCacheNames().isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+package org.healthysleep.cache;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapSessionStoreTest {
+
+    private static Session session(long id, long userId, LocalDateTime start) {
+        User user = new User();
+        user.setId(userId);
+        Session session = new Session(id, user);
+        session.setStartTime(start);
+        session.setEndTime(start.plusHours(8));
+        return session;
+    }
+
+    @Test
+    void get_ShouldRebuildViewFromRow() {
+        // Arrange
+        OffHeapSessionStore store = new OffHeapSessionStore(16);
+        LocalDateTime start = LocalDateTime.of(2025, 4, 23, 23, 15, 30);
+        store.put(session(7L, 3L, start));
+
+        // Act
+        Session view = store.get(7L);
+
+        // Assert
+        assertEquals(7L, view.getId());
+        assertEquals(3L, view.getUser().getId());
+        assertEquals(start, view.getStartTime());
+        assertEquals(start.plusHours(8), view.getEndTime());
+        assertNull(store.get(8L));
+    }
+
+    @Test
+    void put_WhenFull_ShouldOverwriteOldestRow() {
+        // Arrange
+        OffHeapSessionStore store = new OffHeapSessionStore(2);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 22, 0);
+
+        // Act
+        store.putAll(List.of(session(1L, 1L, start), session(2L, 1L, start),
+                session(3L, 1L, start)));
+
+        // Assert
+        assertNull(store.get(1L));
+        assertNotNull(store.get(2L));
+        assertNotNull(store.get(3L));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void remove_ShouldKeepOtherRowsReachable() {
+        // Arrange
+        OffHeapSessionStore store = new OffHeapSessionStore(64);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 22, 0);
+        for (long id = 1; id <= 50; id++) {
+            store.put(session(id, id % 5, start.plusDays(id)));
+        }
+
+        // Act
+        for (long id = 1; id <= 50; id += 2) {
+            store.remove(id);
+        }
+
+        // Assert
+        assertEquals(25, store.size());
+        for (long id = 2; id <= 50; id += 2) {
+            assertEquals(start.plusDays(id), store.get(id).getStartTime());
+        }
+        assertNull(store.get(1L));
+    }
+}
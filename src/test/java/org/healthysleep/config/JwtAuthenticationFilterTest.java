@@ -0,0 +1,82 @@
+package org.healthysleep.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String SECRET = "AldlasdkaowojAIFHAIwjFOPAIwfiaJWFjaWAIWFIAJWOFjkjsfljaljqjowqoin";
+
+    private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(SECRET);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static String token(String secret, String role) {
+        return Jwts.builder()
+                .setSubject("admin@healthysleep.com")
+                .claim("role", role)
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    private Authentication filter(String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        Authentication[] seen = new Authentication[1];
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                seen[0] = SecurityContextHolder.getContext().getAuthentication();
+            }
+        });
+        return seen[0];
+    }
+
+    @Test
+    void doFilter_WithValidToken_ShouldGrantRoleFromToken() throws Exception {
+        // Act
+        Authentication authentication = filter("Bearer " + token(SECRET, "ADMIN"));
+
+        // Assert
+        assertNotNull(authentication);
+        assertEquals("admin@healthysleep.com", authentication.getPrincipal());
+        assertEquals(List.of("ROLE_ADMIN"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void doFilter_WithForeignSignature_ShouldStayAnonymous() throws Exception {
+        // Arrange
+        String foreign = token("QmFkU2VjcmV0QmFkU2VjcmV0QmFkU2VjcmV0QmFkU2VjcmV0QmFkU2VjcmV0", "ADMIN");
+
+        // Act & Assert
+        assertNull(filter("Bearer " + foreign));
+    }
+
+    @Test
+    void doFilter_WithoutToken_ShouldStayAnonymous() throws Exception {
+        // Act & Assert
+        assertNull(filter(null));
+    }
+}
@@ -0,0 +1,206 @@
+package org.healthysleep.config;
+
+import jakarta.servlet.http.Cookie;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.healthysleep.cache.StaleReads;
+import org.healthysleep.config.ReadWriteRoutingDataSource.Route;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadWriteRoutingDataSourceTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(Duration.ofSeconds(2), now::get);
+    private final ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(readYourWrites);
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        TransactionSynchronizationManager.initSynchronization();
+        request(new MockHttpServletRequest());
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(
+                        TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clear();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private void request(MockHttpServletRequest request) {
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    }
+
+    private static void begin(boolean readOnly) {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    }
+
+    private static void commit() {
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clear();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenReadOnlyTransaction_ShouldUseReplica() {
+        // Arrange
+        begin(true);
+
+        // Act & Assert
+        assertEquals(Route.REPLICA, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenWriteTransaction_ShouldUsePrimary() {
+        // Arrange
+        begin(false);
+
+        // Act & Assert
+        assertEquals(Route.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WithoutTransaction_ShouldUsePrimary() {
+        // Act & Assert
+        assertEquals(Route.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void determineCurrentLookupKey_AfterCommittedWrite_ShouldPinReadsToPrimaryForWindow() {
+        // Arrange
+        begin(false);
+        routing.determineCurrentLookupKey();
+        commit();
+
+        // Act
+        begin(true);
+        Object insideWindow = routing.determineCurrentLookupKey();
+        now.addAndGet(2_000);
+        Object afterWindow = routing.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals(Route.PRIMARY, insideWindow);
+        assertEquals(Route.REPLICA, afterWindow);
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenWriteRolledBack_ShouldNotPin() {
+        // Arrange
+        begin(false);
+        routing.determineCurrentLookupKey();
+        TransactionSynchronizationManager.clear();
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        begin(true);
+
+        // Assert
+        assertEquals(Route.REPLICA, routing.determineCurrentLookupKey());
+        assertNull(response.getCookie(ReadYourWrites.COOKIE));
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenCookieFromOtherNodeIsFresh_ShouldUsePrimary() {
+        // Arrange
+        begin(false);
+        routing.determineCurrentLookupKey();
+        commit();
+        Cookie lastWrite = response.getCookie(ReadYourWrites.COOKIE);
+        ReadWriteRoutingDataSource otherNode =
+                new ReadWriteRoutingDataSource(new ReadYourWrites(Duration.ofSeconds(2), now::get));
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.setCookies(lastWrite);
+        request(nextRequest);
+
+        // Act
+        begin(true);
+        Object insideWindow = otherNode.determineCurrentLookupKey();
+        now.addAndGet(2_000);
+        Object afterWindow = otherNode.determineCurrentLookupKey();
+
+        // Assert
+        assertNotNull(lastWrite);
+        assertEquals(Route.PRIMARY, insideWindow);
+        assertEquals(Route.REPLICA, afterWindow);
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenHeaderIsFresh_ShouldUsePrimary() {
+        // Arrange
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.addHeader(ReadYourWrites.HEADER, Long.toString(now.get() - 500));
+        request(nextRequest);
+        begin(true);
+
+        // Act & Assert
+        assertEquals(Route.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenTimestampIsFarInFuture_ShouldIgnoreIt() {
+        // Arrange
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.addHeader(ReadYourWrites.HEADER, Long.toString(now.get() + 60_000));
+        request(nextRequest);
+        begin(true);
+
+        // Act & Assert
+        assertEquals(Route.REPLICA, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenOtherClientWroteRecently_ShouldMarkReplicaReadStale() {
+        // Arrange
+        begin(false);
+        routing.determineCurrentLookupKey();
+        commit();
+        request(new MockHttpServletRequest());
+
+        // Act
+        begin(true);
+        Object route = routing.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals(Route.REPLICA, route);
+        assertTrue(StaleReads.inCurrentTransaction());
+    }
+
+    @Test
+    void determineCurrentLookupKey_WhenNoRecentWrites_ShouldLeaveReplicaReadCacheable() {
+        // Arrange
+        begin(true);
+
+        // Act
+        routing.determineCurrentLookupKey();
+
+        // Assert
+        assertFalse(StaleReads.inCurrentTransaction());
+    }
+
+    @Test
+    void writeSeen_ShouldMarkReplicaStaleForWindow() {
+        // Act
+        readYourWrites.writeSeen();
+        boolean insideWindow = readYourWrites.replicaMayBeStale();
+        now.addAndGet(2_000);
+
+        // Assert
+        assertTrue(insideWindow);
+        assertFalse(readYourWrites.replicaMayBeStale());
+    }
+}
@@ -0,0 +1,150 @@
+package org.healthysleep.config;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SchemaMigratorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DatabaseLocks databaseLocks;
+
+    private SchemaMigrator schemaMigrator;
+
+    @BeforeEach
+    void setUp() {
+        schemaMigrator = new SchemaMigrator(jdbcTemplate, databaseLocks, Duration.ofMinutes(1));
+    }
+
+    private void lockAcquired() {
+        when(databaseLocks.runExclusively(eq(SchemaMigrator.LOCK), eq(Duration.ofMinutes(1)), any()))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(2, Runnable.class).run();
+                    return true;
+                });
+    }
+
+    private static Resource script(String fileName) {
+        return new ByteArrayResource("SELECT 1;".getBytes()) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+    }
+
+    @Test
+    void migrations_ShouldSortByVersionAndReadDescription() {
+        // Act
+        List<SchemaMigrator.Migration> result = SchemaMigrator.migrations(new Resource[] {
+                script("V10__later.sql"), script("V2__add_some_index.sql")});
+
+        // Assert
+        assertEquals(List.of(2, 10), result.stream().map(SchemaMigrator.Migration::version).toList());
+        assertEquals("add some index", result.get(0).description());
+    }
+
+    @Test
+    void migrations_WhenVersionRepeats_ShouldThrow() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> SchemaMigrator.migrations(new Resource[] {
+                script("V1__first.sql"), script("V1__second.sql")}));
+    }
+
+    @Test
+    void migrations_ShouldFindBundledScripts() throws Exception {
+        // Act
+        List<SchemaMigrator.Migration> result = SchemaMigrator.migrations(
+                new PathMatchingResourcePatternResolver().getResources(SchemaMigrator.LOCATION));
+
+        // Assert
+        assertEquals(List.of(1, 2, 3, 4, 5), result.stream().map(SchemaMigrator.Migration::version).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void migrate_ShouldApplyOnlyPendingVersionsInOrder() {
+        // Arrange
+        lockAcquired();
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class))).thenReturn(List.of());
+        when(jdbcTemplate.queryForList(contains("state = 'success'"), eq(Integer.class))).thenReturn(List.of(1));
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.migrations(new Resource[] {
+                script("V1__applied.sql"), script("V2__second.sql"), script("V3__third.sql")});
+
+        // Act
+        schemaMigrator.migrate(migrations);
+
+        // Assert
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).update(contains("'started'"), eq(2), eq("second"));
+        inOrder.verify(jdbcTemplate).execute(any(ConnectionCallback.class));
+        inOrder.verify(jdbcTemplate).update(contains("state = 'success'"), eq(2));
+        inOrder.verify(jdbcTemplate).update(contains("'started'"), eq(3), eq("third"));
+        inOrder.verify(jdbcTemplate).execute(any(ConnectionCallback.class));
+        inOrder.verify(jdbcTemplate).update(contains("state = 'success'"), eq(3));
+        verify(jdbcTemplate, never()).update(anyString(), eq(1), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void migrate_WhenScriptFails_ShouldRecordFailureAndStop() {
+        // Arrange
+        lockAcquired();
+        // lenient: execute(String) того же мока создаёт таблицу версий
+        lenient().when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenThrow(new DataAccessResourceFailureException("Lost connection during ALTER TABLE"));
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.migrations(new Resource[] {
+                script("V2__second.sql"), script("V3__third.sql")});
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class, () -> schemaMigrator.migrate(migrations));
+        verify(jdbcTemplate).update(contains("state = 'failed'"), eq(2));
+        verify(jdbcTemplate, never()).update(contains("state = 'success'"), eq(2));
+        verify(jdbcTemplate, never()).update(anyString(), eq(3), any());
+    }
+
+    @Test
+    void migrate_WhenPreviousRunDidNotFinish_ShouldRefuseToStart() {
+        // Arrange
+        lockAcquired();
+        when(jdbcTemplate.queryForList(contains("state <> 'success'"), eq(Integer.class))).thenReturn(List.of(3));
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.migrations(new Resource[] {
+                script("V3__third.sql")});
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> schemaMigrator.migrate(migrations));
+        verify(jdbcTemplate, never()).update(anyString(), eq(3), any());
+    }
+
+    @Test
+    void migrate_WhenLockIsNotAcquired_ShouldThrow() {
+        // Arrange
+        when(databaseLocks.runExclusively(eq(SchemaMigrator.LOCK), any(), any())).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> schemaMigrator.migrate(List.of()));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
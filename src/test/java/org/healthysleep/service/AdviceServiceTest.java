@@ -1,6 +1,10 @@
 package org.healthysleep.service;
 
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.healthysleep.cache.AdviceCache;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.MissingAdviceCache;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Advice;
 import org.healthysleep.repository.AdviceRepository;
@@ -13,10 +17,13 @@ import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.LongFunction;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,6 +37,21 @@ class AdviceServiceTest {
     @Mock
     private AdviceCache adviceCache;
     
+    @Mock
+    private MissingAdviceCache missingAdvices;
+    
+    @Mock
+    private InvalidationBus invalidationBus;
+    
+    @Mock
+    private JsonStreamWriter streamWriter;
+    
+    @Mock
+    private Validator validator;
+    
+    @Mock
+    private AggregateCounterService counters;
+    
     @InjectMocks
     private AdviceService adviceService;
     
@@ -42,27 +64,30 @@ class AdviceServiceTest {
         advice2 = new Advice(2L, "Relax before bed", 7);
     }
     
+    private void stubCacheLoadThrough() {
+        when(adviceCache.getOrLoad(anyLong(), any())).thenAnswer(invocation -> invocation
+                .<LongFunction<Advice>>getArgument(1).apply(invocation.<Long>getArgument(0)));
+    }
+    
     @Test
     void getAllAdvices_ShouldCacheMissedItems() {
         // Arrange
         List<Advice> advices = Arrays.asList(advice1, advice2);
-        when(adviceRepository.findAll()).thenReturn(advices);
-        when(adviceCache.get(1L)).thenReturn(null);
-        when(adviceCache.get(2L)).thenReturn(advice2);
+        when(adviceRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(advices);
+        when(adviceCache.peekAll(any())).thenReturn(Map.of(2L, advice2));
         
         // Act
-        List<Advice> result = adviceService.getAllAdvices();
+        List<Advice> result = adviceService.getAllAdvices(null, 50).items();
         
         // Assert
         assertEquals(2, result.size());
-        verify(adviceCache).put(1L, advice1);
-        verify(adviceCache, never()).put(2L, advice2);
+        verify(adviceCache).putAll(Map.of(1L, advice1));
     }
     
     @Test
     void getAdviceById_WhenCached_ReturnFromCache() {
         // Arrange
-        when(adviceCache.get(1L)).thenReturn(advice1);
+        when(adviceCache.getOrLoad(eq(1L), any())).thenReturn(advice1);
         
         // Act
         Advice result = adviceService.getAdviceById(1L);
@@ -73,9 +98,9 @@ class AdviceServiceTest {
     }
     
     @Test
-    void getAdviceById_WhenNotCached_ReturnFromRepositoryAndCache() {
+    void getAdviceById_WhenNotCached_LoadThroughCache() {
         // Arrange
-        when(adviceCache.get(1L)).thenReturn(null);
+        stubCacheLoadThrough();
         when(adviceRepository.findById(1L)).thenReturn(Optional.of(advice1));
         
         // Act
@@ -83,18 +108,44 @@ class AdviceServiceTest {
         
         // Assert
         assertEquals(advice1, result);
-        verify(adviceCache).put(1L, advice1);
+        verify(adviceRepository).findById(1L);
     }
     
     @Test
     void getAdviceById_WhenNotFound_ThrowException() {
         // Arrange
-        when(adviceCache.get(999L)).thenReturn(null);
+        stubCacheLoadThrough();
         when(adviceRepository.findById(999L)).thenReturn(Optional.empty());
         
         // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () ->
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () ->
                 adviceService.getAdviceById(999L));
+        assertEquals(0, exception.getStackTrace().length);
+        verify(missingAdvices).markMissing(999L);
+    }
+    
+    @Test
+    void getAdviceById_WhenKnownMissing_ShouldNotQueryRepository() {
+        // Arrange
+        stubCacheLoadThrough();
+        when(missingAdvices.isKnownMissing(999L)).thenReturn(true);
+        
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> adviceService.getAdviceById(999L));
+        verify(adviceRepository, never()).findById(anyLong());
+    }
+    
+    @Test
+    void createAdvice_ShouldForgetKnownMissingId() {
+        // Arrange
+        when(adviceRepository.save(advice1)).thenReturn(advice1);
+        
+        // Act
+        adviceService.createAdvice(advice1);
+        
+        // Assert
+        verify(missingAdvices).remove(1L);
+        verify(invalidationBus).publish(any(), eq(1L));
     }
     
     @Test
@@ -110,10 +161,26 @@ class AdviceServiceTest {
         assertEquals(advice1, result);
     }
     
+    @Test
+    void getAdvicesByIds_ShouldLoadOnlyMissesInOneQuery() {
+        // Arrange
+        when(adviceCache.getAll(List.of(1L, 2L, 3L))).thenReturn(Map.of(1L, advice1));
+        when(adviceRepository.findAllById(List.of(2L, 3L))).thenReturn(List.of(advice2));
+        
+        // Act
+        List<Advice> result = adviceService.getAdvicesByIds(List.of(1L, 2L, 3L));
+        
+        // Assert
+        assertEquals(List.of(advice1, advice2), result);
+        verify(adviceCache).putAll(Map.of(2L, advice2));
+        verify(adviceRepository, never()).findById(anyLong());
+    }
+    
     @Test
     void updateAdvice_ShouldUpdateAndCache() {
         // Arrange
         Advice updated = new Advice(1L, "Updated", 9);
+        stubCacheLoadThrough();
         when(adviceRepository.findById(1L)).thenReturn(Optional.of(advice1));
         when(adviceRepository.save(any())).thenReturn(updated);
         
@@ -123,6 +190,7 @@ class AdviceServiceTest {
         // Assert
         assertEquals("Updated", result.getAdvice());
         assertEquals(9, result.getRecommendedHours());
+        verify(invalidationBus).publish(any(), eq(1L));
     }
     
     @Test
@@ -133,6 +201,7 @@ class AdviceServiceTest {
         // Assert
         verify(adviceCache).remove(1L);
         verify(adviceRepository).deleteById(1L);
+        verify(invalidationBus).publish(any(), eq(1L));
     }
     
     @Test
@@ -141,14 +210,13 @@ class AdviceServiceTest {
         int hours = 8;
         List<Advice> advices = List.of(advice1);
         when(adviceRepository.findAllByRecommendedHours(hours)).thenReturn(advices);
-        when(adviceCache.get(1L)).thenReturn(null);
         
         // Act
         List<Advice> result = adviceService.getAdvicesByRecommendedHours(hours);
         
         // Assert
         assertEquals(1, result.size());
-        verify(adviceCache).put(1L, advice1);
+        verify(adviceCache).putAll(Map.of(1L, advice1));
     }
     
     @Test
@@ -157,16 +225,14 @@ class AdviceServiceTest {
         int hours = 7;
         List<Advice> advices = List.of(advice1, advice2);
         when(adviceRepository.findAllByRecommendedHoursGreaterThan(hours)).thenReturn(advices);
-        when(adviceCache.get(1L)).thenReturn(null);
-        when(adviceCache.get(2L)).thenReturn(advice2);
+        when(adviceCache.peekAll(any())).thenReturn(Map.of(2L, advice2));
         
         // Act
         List<Advice> result = adviceService.getAdvicesByRecommendedHoursGreaterThan(hours);
         
         // Assert
         assertEquals(2, result.size());
-        verify(adviceCache).put(1L, advice1);
-        verify(adviceCache, never()).put(2L, advice2);
+        verify(adviceCache).putAll(Map.of(1L, advice1));
     }
     
     @Test
@@ -175,20 +241,20 @@ class AdviceServiceTest {
         int hours = 9;
         List<Advice> advices = List.of(advice2);
         when(adviceRepository.findAllByRecommendedHoursLessThan(hours)).thenReturn(advices);
-        when(adviceCache.get(2L)).thenReturn(null);
         
         // Act
         List<Advice> result = adviceService.getAdvicesByRecommendedHoursLessThan(hours);
         
         // Assert
         assertEquals(1, result.size());
-        verify(adviceCache).put(2L, advice2);
+        verify(adviceCache).putAll(Map.of(2L, advice2));
     }
     
     @Test
     void updateAdvice_NonExistingId_ShouldThrowException() {
         // Arrange
         Long invalidId = 999L;
+        stubCacheLoadThrough();
         when(adviceRepository.findById(invalidId)).thenReturn(Optional.empty());
         
         // Act & Assert
@@ -196,13 +262,63 @@ class AdviceServiceTest {
                 adviceService.updateAdvice(invalidId, new Advice()));
     }
     
+    @Test
+    void createAdvices_ShouldSaveValidOnesAndReportRejected() {
+        // Arrange
+        AdviceService serviceWithValidator = new AdviceService(adviceRepository, adviceCache,
+                missingAdvices, invalidationBus, streamWriter,
+                Validation.buildDefaultValidatorFactory().getValidator(), counters);
+        Advice invalid = new Advice(7L, "short", 30);
+        List<Advice> advices = Arrays.asList(advice1, invalid, advice2);
+        when(adviceRepository.saveAll(List.of(advice1, advice2))).thenAnswer(invocation -> {
+            advice1.setId(10L);
+            advice2.setId(11L);
+            return List.of(advice1, advice2);
+        });
+        
+        // Act
+        BulkReport report = serviceWithValidator.createAdvices(advices);
+        
+        // Assert
+        assertEquals(2, report.created());
+        assertEquals(1, report.rejected());
+        assertEquals(10L, report.items().get(0).id());
+        assertNull(report.items().get(1).id());
+        assertEquals(2, report.items().get(1).errors().size());
+        assertEquals(11L, report.items().get(2).id());
+        verify(adviceCache, never()).put(anyLong(), any());
+        verify(missingAdvices).remove(10L);
+    }
+    
+    @Test
+    void getAdviceUserCount_ShouldReadCounterWithoutLoadingUsers() {
+        // Arrange
+        when(counters.getAdviceUserCount(1L)).thenReturn(42L);
+        
+        // Act
+        int count = adviceService.getAdviceUserCount(1L);
+        
+        // Assert
+        assertEquals(42, count);
+        verify(adviceRepository, never()).findById(anyLong());
+    }
+    
+    @Test
+    void getAdviceUserCount_UnknownAdvice_ShouldThrowException() {
+        // Arrange
+        when(adviceRepository.existsById(99L)).thenReturn(false);
+        
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> adviceService.getAdviceUserCount(99L));
+    }
+    
     @Test
     void getAllAdvices_WithEmptyRepository_ReturnEmptyList() {
         // Arrange
-        when(adviceRepository.findAll()).thenReturn(List.of());
+        when(adviceRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(List.of());
         
         // Act
-        List<Advice> result = adviceService.getAllAdvices();
+        List<Advice> result = adviceService.getAllAdvices(null, 50).items();
         
         // Assert
         assertTrue(result.isEmpty());
@@ -247,15 +363,14 @@ class AdviceServiceTest {
     @Test
     void getAdviceById_MultipleCalls_ShouldCacheProperly() {
         // Arrange
-        when(adviceCache.get(1L))
-                .thenReturn(null)  // Первый вызов - нет в кэше
-                .thenReturn(advice1); // Второй вызов - есть в кэше
+        AdviceService serviceWithRealCache = new AdviceService(adviceRepository, new AdviceCache(512 * 1024),
+                new MissingAdviceCache(), invalidationBus, streamWriter, validator, counters);
         when(adviceRepository.findById(1L)).thenReturn(Optional.of(advice1));
         
         // Первый вызов
-        Advice firstResult = adviceService.getAdviceById(1L);
+        Advice firstResult = serviceWithRealCache.getAdviceById(1L);
         // Второй вызов
-        Advice secondResult = adviceService.getAdviceById(1L);
+        Advice secondResult = serviceWithRealCache.getAdviceById(1L);
         
         // Assert
         verify(adviceRepository, times(1)).findById(1L); // Репозиторий вызывается только 1 раз
@@ -0,0 +1,129 @@
+package org.healthysleep.service;
+
+import java.time.Duration;
+import java.util.List;
+import org.healthysleep.cache.LfuCache;
+import org.healthysleep.cache.NegativeCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheAutoTunerTest {
+
+    private static LfuCache<String> cacheOf(int capacity) {
+        return new LfuCache<>(capacity, 1) {
+        };
+    }
+
+    // Заполняет кэш и даёт за интервал заданное число попаданий и промахов
+    private static void traffic(LfuCache<String> cache, int hits, int misses) {
+        for (long id = 1; id <= cache.getMaxCapacity(); id++) {
+            cache.put(id, "value");
+        }
+        for (int i = 0; i < hits; i++) {
+            cache.get(1L);
+        }
+        for (int i = 0; i < misses; i++) {
+            cache.get(-1L);
+        }
+    }
+
+    @Test
+    void tune_WhenFullAndHeapHasRoom_ShouldGrowCache() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(100);
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(cache), true, 0.7, () -> 0.5);
+        traffic(cache, 50, 100);
+
+        // Act
+        tuner.tune();
+
+        // Assert
+        assertEquals(125, cache.getMaxCapacity());
+    }
+
+    @Test
+    void tune_WhenHeapIsBusy_ShouldKeepCapacity() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(100);
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(cache), true, 0.7, () -> 0.9);
+        traffic(cache, 50, 100);
+
+        // Act
+        tuner.tune();
+
+        // Assert
+        assertEquals(100, cache.getMaxCapacity());
+    }
+
+    @Test
+    void tune_WhenGrowthDidNotImproveHitRatio_ShouldStopGrowing() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(100);
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(cache), true, 0.7, () -> 0.5);
+        traffic(cache, 50, 100);
+        tuner.tune();
+        traffic(cache, 50, 100);
+
+        // Act
+        tuner.tune();
+        traffic(cache, 50, 100);
+        tuner.tune();
+
+        // Assert
+        assertEquals(125, cache.getMaxCapacity());
+    }
+
+    @Test
+    void onMemoryPressure_ShouldShrinkButNotBelowFloor() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(100);
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(cache), true, 0.7, () -> 0.5);
+
+        // Act
+        tuner.onMemoryPressure();
+        tuner.onMemoryPressure();
+        tuner.onMemoryPressure();
+
+        // Assert
+        assertEquals(25, cache.getMaxCapacity());
+    }
+
+    @Test
+    void tune_WhenDisabled_ShouldDoNothing() {
+        // Arrange
+        LfuCache<String> cache = cacheOf(100);
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(cache), false, 0.7, () -> 0.5);
+        traffic(cache, 50, 100);
+
+        // Act
+        tuner.tune();
+
+        // Assert
+        assertEquals(100, cache.getMaxCapacity());
+    }
+
+    @Test
+    void tune_ShouldLeaveNegativeCachesAlone() {
+        // Arrange
+        NegativeCache missing = new NegativeCache("missing", 100, Duration.ofMinutes(1)) {
+        };
+        CacheAutoTuner tuner = new CacheAutoTuner(List.of(missing), true, 0.7, () -> 0.5);
+        for (long id = 1; id <= 100; id++) {
+            missing.markMissing(id);
+        }
+        for (int i = 0; i < 50; i++) {
+            missing.isKnownMissing(1L);
+        }
+        for (int i = 0; i < 100; i++) {
+            missing.isKnownMissing(-1L);
+        }
+
+        // Act
+        tuner.tune();
+        tuner.onMemoryPressure();
+
+        // Assert
+        assertEquals(100, missing.getMaxCapacity());
+    }
+}
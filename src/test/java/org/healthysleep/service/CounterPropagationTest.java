@@ -0,0 +1,176 @@
+package org.healthysleep.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.OffHeapSessionStore;
+import org.healthysleep.cache.SessionCache;
+import org.healthysleep.cache.UserCache;
+import org.healthysleep.model.Advice;
+import org.healthysleep.model.User;
+import org.healthysleep.repository.AdviceCounterRepository;
+import org.healthysleep.repository.AdviceRepository;
+import org.healthysleep.repository.SessionRepository;
+import org.healthysleep.repository.UserRepository;
+import org.healthysleep.repository.UserSessionStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Сервисы и счётчики через настоящие транзакционные прокси: MANDATORY в счётчиках
+ * должен находить транзакцию вызывающего метода. База не нужна, поэтому менеджер
+ * транзакций только отмечает границы транзакции.
+ */
+@SpringJUnitConfig(CounterPropagationTest.Config.class)
+class CounterPropagationTest {
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private AggregateCounterService counters;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private AdviceRepository adviceRepository;
+    
+    @Autowired
+    private AdviceCounterRepository adviceCounterRepository;
+    
+    @BeforeEach
+    void setUp() {
+        reset(userRepository, adviceRepository, adviceCounterRepository);
+    }
+    
+    @Test
+    void addAdvicesToUser_ShouldUpdateCountersInsideItsTransaction() {
+        // Arrange
+        User user = new User();
+        user.setId(1L);
+        Advice advice = new Advice(10L, "Go to bed before midnight", 8);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(adviceRepository.findAllById(List.of(10L))).thenReturn(List.of(advice));
+        when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        // Act
+        userService.addAdvicesToUser(1L, List.of(10L));
+        
+        // Assert
+        verify(adviceCounterRepository).add(List.of(10L), 1);
+        assertEquals(Set.of(advice), user.getSleepAdvices());
+    }
+    
+    @Test
+    void removeAdviceFromUser_ShouldUpdateCountersInsideItsTransaction() {
+        // Arrange
+        Advice advice = new Advice(10L, "Go to bed before midnight", 8);
+        User user = new User();
+        user.setId(1L);
+        user.getSleepAdvices().add(advice);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(adviceRepository.findById(10L)).thenReturn(Optional.of(advice));
+        
+        // Act
+        userService.removeAdviceFromUser(1L, 10L);
+        
+        // Assert
+        verify(adviceCounterRepository).add(List.of(10L), -1);
+    }
+    
+    @Test
+    void adviceLinksAdded_WithoutTransaction_ShouldBeRejected() {
+        // Act & Assert
+        assertThrows(IllegalTransactionStateException.class, () -> counters.adviceLinksAdded(List.of(10L)));
+        verifyNoInteractions(adviceCounterRepository);
+    }
+    
+    @Configuration
+    @EnableTransactionManagement
+    static class Config {
+        
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new BoundaryTransactionManager();
+        }
+        
+        @Bean
+        UserRepository userRepository() {
+            return mock(UserRepository.class);
+        }
+        
+        @Bean
+        AdviceRepository adviceRepository() {
+            return mock(AdviceRepository.class);
+        }
+        
+        @Bean
+        AdviceCounterRepository adviceCounterRepository() {
+            return mock(AdviceCounterRepository.class);
+        }
+        
+        @Bean
+        AggregateCounterService counters(AdviceCounterRepository adviceCounterRepository) {
+            return new AggregateCounterService(adviceCounterRepository, mock(UserSessionStatsRepository.class));
+        }
+        
+        @Bean
+        UserService userService(UserRepository userRepository, AdviceRepository adviceRepository,
+                                AggregateCounterService counters) {
+            return new UserService(userRepository, adviceRepository, mock(SessionRepository.class),
+                    mock(UserCache.class), mock(SessionCache.class), mock(OffHeapSessionStore.class),
+                    mock(InvalidationBus.class), counters);
+        }
+    }
+    
+    // Транзакция без ресурса: существует, пока к потоку привязан маркер
+    static class BoundaryTransactionManager extends AbstractPlatformTransactionManager {
+        
+        private static final Object MARKER = new Object();
+        
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+        
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return TransactionSynchronizationManager.hasResource(MARKER);
+        }
+        
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            TransactionSynchronizationManager.bindResource(MARKER, transaction);
+        }
+        
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+        
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+        
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            TransactionSynchronizationManager.unbindResource(MARKER);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.healthysleep.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.healthysleep.exception.InvalidInputException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JsonStreamWriterTest {
+    
+    @Mock
+    private EntityManager entityManager;
+    
+    @Test
+    void write_Json_ShouldProduceArray() throws Exception {
+        // Arrange
+        JsonStreamWriter writer = new JsonStreamWriter(new ObjectMapper(), entityManager);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        // Act
+        long count = writer.write(Stream.of(Map.of("id", 1), Map.of("id", 2)), ExportFormat.JSON, out);
+        
+        // Assert
+        assertEquals(2, count);
+        assertEquals("[{\"id\":1},{\"id\":2}]", out.toString(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void write_Ndjson_ShouldProduceOneObjectPerLine() throws Exception {
+        // Arrange
+        JsonStreamWriter writer = new JsonStreamWriter(new ObjectMapper(), entityManager);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        // Act
+        writer.write(Stream.of(Map.of("id", 1), Map.of("id", 2)), ExportFormat.NDJSON, out);
+        
+        // Assert
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", out.toString(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void write_ShouldClearPersistenceContextPeriodically() throws Exception {
+        // Arrange
+        JsonStreamWriter writer = new JsonStreamWriter(new ObjectMapper(), entityManager);
+        Stream<Integer> rows = IntStream.range(0, JsonStreamWriter.CLEAR_INTERVAL * 2 + 1).boxed();
+        
+        // Act
+        writer.write(rows, ExportFormat.NDJSON, new ByteArrayOutputStream());
+        
+        // Assert
+        verify(entityManager, times(2)).clear();
+    }
+    
+    @Test
+    void exportFormatOf_ShouldIgnoreCaseAndRejectUnknown() {
+        // Act & Assert
+        assertEquals(ExportFormat.NDJSON, ExportFormat.of("ndjson"));
+        assertThrows(InvalidInputException.class, () -> ExportFormat.of("xml"));
+    }
+}
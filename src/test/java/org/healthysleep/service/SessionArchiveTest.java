@@ -0,0 +1,241 @@
+package org.healthysleep.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.healthysleep.model.Session;
+import org.healthysleep.model.SessionArchiveState;
+import org.healthysleep.model.SessionRecord;
+import org.healthysleep.repository.SessionArchiveStateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SessionArchiveTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private SessionArchiveStateRepository stateRepository;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final SessionArchiveState state = new SessionArchiveState();
+    private SessionArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        // Строка состояния одна на все узлы: каждый экземпляр читает её из таблицы
+        state.setId(SessionArchiveState.ID);
+        when(stateRepository.findById(SessionArchiveState.ID)).thenReturn(Optional.of(state));
+        when(stateRepository.findForWrite()).thenReturn(Optional.of(state));
+        when(stateRepository.findForUpdate()).thenReturn(Optional.of(state));
+        archive = newArchive();
+    }
+
+    private SessionArchive newArchive() {
+        return new SessionArchive(dir.toString(), true, stateRepository, objectMapper);
+    }
+
+    private static SessionRecord record(long id, long userId, int day) {
+        LocalDateTime start = MONTH.atDay(day).atTime(23, 0);
+        return new SessionRecord(id, userId, start, start.plusHours(8));
+    }
+
+    @Test
+    void hotStart_WhenArchiveIsEmpty_ShouldCoverEverything() {
+        // Act & Assert
+        assertEquals(LocalDateTime.MIN, archive.hotStart());
+        assertTrue(archive.read(1L, LocalDateTime.of(1970, 1, 1, 0, 0), LocalDateTime.now()).isEmpty());
+    }
+
+    @Test
+    void archived_ShouldMoveHotStartPastMonth() throws Exception {
+        // Arrange
+        long count = archive.write(MONTH, Stream.of(record(1, 1, 5), record(2, 2, 6)));
+
+        // Act
+        archive.archived(MONTH);
+
+        // Assert
+        assertEquals(2, count);
+        assertEquals(LocalDateTime.of(2024, 4, 1, 0, 0), archive.hotStart());
+        assertEquals(LocalDate.of(2024, 3, 1), state.getOldestMonth());
+    }
+
+    @Test
+    void write_ShouldNotMoveHotStart() throws Exception {
+        // Act
+        archive.write(MONTH, Stream.of(record(1, 1, 5)));
+
+        // Assert
+        assertEquals(LocalDateTime.MIN, archive.hotStart());
+    }
+
+    @Test
+    void read_ShouldReturnOnlyRequestedUserAndRange() throws Exception {
+        // Arrange
+        archive.write(MONTH, Stream.of(record(1, 1, 5), record(3, 1, 20), record(2, 2, 6)));
+        archive.archived(MONTH);
+
+        // Act
+        List<Session> result = archive.read(1L, LocalDateTime.of(2024, 3, 1, 0, 0),
+                LocalDateTime.of(2024, 3, 10, 0, 0));
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(1L, result.get(0).getId());
+        assertEquals(1L, result.get(0).getUser().getId());
+        assertEquals(MONTH.atDay(5).atTime(23, 0), result.get(0).getStartTime());
+    }
+
+    @Test
+    void read_ShouldFindEveryUserThroughIndex() throws Exception {
+        // Arrange
+        archive.write(MONTH, Stream.of(record(1, 1, 5), record(2, 4, 6), record(3, 7, 7),
+                record(4, 7, 8), record(5, 9, 9)));
+        archive.archived(MONTH);
+        LocalDateTime from = MONTH.atDay(1).atStartOfDay();
+        LocalDateTime to = archive.hotStart();
+
+        // Act & Assert
+        assertEquals(1, archive.read(1L, from, to).size());
+        assertEquals(1, archive.read(4L, from, to).size());
+        assertEquals(2, archive.read(7L, from, to).size());
+        assertEquals(1, archive.read(9L, from, to).size());
+        assertTrue(archive.read(5L, from, to).isEmpty());
+        assertTrue(archive.read(10L, from, to).isEmpty());
+    }
+
+    @Test
+    void write_ShouldProduceFileReadableAsWhole() throws Exception {
+        // Arrange
+        archive.write(MONTH, Stream.of(record(1, 1, 5), record(2, 2, 6)));
+
+        // Act
+        String content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(dir.resolve("sessions-2024-03.ndjson.gz")))) {
+            content = new String(in.readAllBytes());
+        }
+
+        // Assert
+        assertEquals(2, content.lines().count());
+    }
+
+    @Test
+    void write_WhenRowsAreNotOrderedByUser_ShouldThrowException() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class,
+                () -> archive.write(MONTH, Stream.of(record(1, 2, 5), record(2, 1, 6))));
+    }
+
+    @Test
+    void newArchive_ShouldReadBoundaryFromStateTable() throws Exception {
+        // Arrange
+        archive.write(MONTH, Stream.of(record(1, 1, 5)));
+        archive.archived(MONTH);
+
+        // Act
+        SessionArchive otherInstance = newArchive();
+
+        // Assert
+        assertEquals(LocalDateTime.of(2024, 4, 1, 0, 0), otherInstance.hotStart());
+        assertEquals(1, otherInstance.read(1L, LocalDateTime.of(2024, 1, 1, 0, 0),
+                otherInstance.hotStart()).size());
+    }
+
+    @Test
+    void seal_ShouldRejectWritesBeforeArchiveIsWritten() {
+        // Act
+        archive.seal(MONTH);
+
+        // Assert
+        assertEquals(LocalDateTime.of(2024, 4, 1, 0, 0), archive.writableFrom());
+        assertEquals(LocalDateTime.MIN, archive.hotStart());
+    }
+
+    @Test
+    void unseal_ShouldReopenMonthAfterFailedArchiving() {
+        // Arrange
+        archive.seal(MONTH);
+
+        // Act
+        archive.unseal();
+
+        // Assert
+        assertEquals(LocalDateTime.MIN, archive.writableFrom());
+    }
+
+    @Test
+    void writableFrom_ShouldTakeOneSharedLockOnStateRow() {
+        // Arrange
+        archive.seal(MONTH);
+
+        // Act
+        archive.writableFrom();
+
+        // Assert
+        verify(stateRepository, times(1)).findForWrite();
+    }
+
+    @Test
+    void writableFrom_WhenArchivingIsDisabled_ShouldNotReadStateRow() {
+        // Arrange
+        SessionArchive disabled = new SessionArchive(dir.toString(), false, stateRepository, objectMapper);
+
+        // Act
+        LocalDateTime writableFrom = disabled.writableFrom();
+
+        // Assert
+        assertEquals(LocalDateTime.MIN, writableFrom);
+        verify(stateRepository, never()).findForWrite();
+    }
+
+    @Test
+    void newArchive_WhenEnabledWithoutDir_ShouldThrowException() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class,
+                () -> new SessionArchive("", true, stateRepository, objectMapper));
+    }
+
+    @Test
+    void newArchive_WhenDirIsRelative_ShouldThrowException() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> new SessionArchive("session-archive", false, stateRepository, objectMapper));
+    }
+
+    @Test
+    void read_WhenDirIsNotConfiguredButMonthsAreArchived_ShouldThrowException() {
+        // Arrange
+        state.setOldestMonth(MONTH.atDay(1));
+        state.setFirstHotMonth(MONTH.plusMonths(1).atDay(1));
+        SessionArchive unconfigured = new SessionArchive("", false, stateRepository, objectMapper);
+
+        // Act & Assert
+        assertFalse(unconfigured.isConfigured());
+        assertThrows(IllegalStateException.class,
+                () -> unconfigured.read(1L, MONTH.atDay(1).atStartOfDay(), unconfigured.hotStart()));
+    }
+}
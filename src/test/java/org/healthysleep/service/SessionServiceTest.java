@@ -1,6 +1,11 @@
 package org.healthysleep.service;
 
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.MissingSessionCache;
+import org.healthysleep.cache.OffHeapSessionStore;
 import org.healthysleep.cache.SessionCache;
+import org.healthysleep.cache.UserCache;
+import org.healthysleep.exception.InvalidInputException;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Session;
 import org.healthysleep.model.User;
@@ -12,12 +17,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -34,6 +45,27 @@ class SessionServiceTest {
     @Mock
     private SessionCache sessionCache;
     
+    @Mock
+    private OffHeapSessionStore sessionStore;
+    
+    @Mock
+    private UserCache userCache;
+    
+    @Mock
+    private MissingSessionCache missingSessions;
+    
+    @Mock
+    private InvalidationBus invalidationBus;
+    
+    @Mock
+    private JsonStreamWriter streamWriter;
+    
+    @Mock
+    private AggregateCounterService counters;
+    
+    @Mock
+    private SessionArchive archive;
+    
     @InjectMocks
     private SessionService sessionService;
     
@@ -58,31 +90,73 @@ class SessionServiceTest {
         testSession2.setUser(testUser);
         testSession2.setStartTime(LocalDateTime.now().minusHours(5));
         testSession2.setEndTime(LocalDateTime.now().minusHours(4));
+        
+        lenient().when(archive.writableFrom()).thenReturn(LocalDateTime.MIN);
+    }
+    
+    private void stubCacheLoadThrough() {
+        when(sessionCache.getOrLoad(anyLong(), any())).thenAnswer(invocation -> invocation
+                .<LongFunction<Session>>getArgument(1).apply(invocation.<Long>getArgument(0)));
     }
     
     @Test
     void getAllSessions_ShouldReturnAllSessionsAndCacheThem() {
         // Arrange
-        when(sessionRepository.findAll()).thenReturn(Arrays.asList(testSession, testSession2));
-        when(sessionCache.get(1L)).thenReturn(null);
-        when(sessionCache.get(2L)).thenReturn(testSession2); // simulate one already in cache
+        when(sessionRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(Arrays.asList(testSession, testSession2));
+        when(sessionCache.peekAll(any())).thenReturn(Map.of(2L, testSession2));
         
         // Act
-        List<Session> result = sessionService.getAllSessions();
+        List<Session> result = sessionService.getAllSessions(null, 50).items();
         
         // Assert
         assertEquals(2, result.size());
-        verify(sessionCache).put(1L, testSession); // only put the one not in cache
-        verify(sessionCache, never()).put(2L, testSession2); // already in cache
+        verify(sessionCache).putAll(Map.of(1L, testSession)); // only put the one not in cache
+    }
+    
+    @Test
+    void getAllSessions_WhenMoreRowsThanLimit_ShouldReturnNextCursor() {
+        // Arrange
+        when(sessionRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2)))
+                .thenReturn(Arrays.asList(testSession, testSession2));
+        
+        // Act
+        KeysetPage<Session> page = sessionService.getAllSessions(null, 1);
+        
+        // Assert
+        assertEquals(List.of(testSession), page.items());
+        assertEquals(1L, page.nextCursor());
+    }
+    
+    @Test
+    void getAllSessions_WhenLimitTooLarge_ShouldThrowException() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> sessionService.getAllSessions(null, 5000));
+        verifyNoInteractions(sessionRepository);
+    }
+    
+    @Test
+    void exportSessions_ShouldStreamWithoutCaching() throws Exception {
+        // Arrange
+        Stream<Session> sessions = Stream.of(testSession, testSession2);
+        OutputStream out = new ByteArrayOutputStream();
+        when(sessionRepository.streamAll()).thenReturn(sessions);
+        when(streamWriter.write(sessions, ExportFormat.NDJSON, out)).thenReturn(2L);
+        
+        // Act
+        long exported = sessionService.exportSessions(ExportFormat.NDJSON, out);
+        
+        // Assert
+        assertEquals(2L, exported);
+        verifyNoInteractions(sessionCache, sessionStore);
     }
     
     @Test
     void getAllSessions_EmptyRepository_ShouldReturnEmptyList() {
         // Arrange
-        when(sessionRepository.findAll()).thenReturn(Collections.emptyList());
+        when(sessionRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(Collections.emptyList());
         
         // Act
-        List<Session> result = sessionService.getAllSessions();
+        List<Session> result = sessionService.getAllSessions(null, 50).items();
         
         // Assert
         assertTrue(result.isEmpty());
@@ -92,7 +166,7 @@ class SessionServiceTest {
     @Test
     void getSessionById_WhenInCache_ShouldReturnCachedSession() {
         // Arrange
-        when(sessionCache.get(1L)).thenReturn(testSession);
+        when(sessionCache.getOrLoad(eq(1L), any())).thenReturn(testSession);
         
         // Act
         Session result = sessionService.getSessionById(1L);
@@ -103,9 +177,9 @@ class SessionServiceTest {
     }
     
     @Test
-    void getSessionById_WhenNotInCache_ShouldFetchFromRepositoryAndCache() {
+    void getSessionById_WhenNotInCache_ShouldFetchFromRepositoryAndStore() {
         // Arrange
-        when(sessionCache.get(1L)).thenReturn(null);
+        stubCacheLoadThrough();
         when(sessionRepository.findById(1L)).thenReturn(Optional.of(testSession));
         
         // Act
@@ -113,55 +187,79 @@ class SessionServiceTest {
         
         // Assert
         assertEquals(testSession, result);
-        verify(sessionCache).put(1L, testSession);
+        verify(sessionStore).put(testSession);
+    }
+    
+    @Test
+    void getSessionById_WhenOnlyInOffHeapStore_ShouldReturnStoredView() {
+        // Arrange
+        Session storedView = new Session(1L, testUser);
+        stubCacheLoadThrough();
+        when(sessionStore.get(1L)).thenReturn(storedView);
+        
+        // Act
+        Session result = sessionService.getSessionById(1L);
+        
+        // Assert
+        assertSame(storedView, result);
+        verify(sessionRepository, never()).findById(anyLong());
     }
     
     @Test
     void getSessionById_WhenNotFound_ShouldThrowException() {
         // Arrange
-        when(sessionCache.get(1L)).thenReturn(null);
+        stubCacheLoadThrough();
         when(sessionRepository.findById(1L)).thenReturn(Optional.empty());
         
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () -> sessionService.getSessionById(1L));
-        verify(sessionCache, never()).put(anyLong(), any());
+        verify(sessionStore, never()).put(any());
+        verify(missingSessions).markMissing(1L);
+    }
+    
+    @Test
+    void getSessionById_WhenKnownMissing_ShouldNotQueryRepository() {
+        // Arrange
+        stubCacheLoadThrough();
+        when(missingSessions.isKnownMissing(1L)).thenReturn(true);
+        
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> sessionService.getSessionById(1L));
+        verify(sessionRepository, never()).findById(anyLong());
     }
     
     @Test
     void getUserSessions_UserExists_ShouldReturnSessionsAndCacheThem() {
         // Arrange
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(sessionRepository.findByUser(testUser)).thenReturn(Arrays.asList(testSession, testSession2));
-        when(sessionCache.get(1L)).thenReturn(null);
-        when(sessionCache.get(2L)).thenReturn(null);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(sessionRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(1L, 0L, Limit.of(51))).thenReturn(Arrays.asList(testSession, testSession2));
         
         // Act
-        List<Session> result = sessionService.getUserSessions(1L);
+        List<Session> result = sessionService.getUserSessions(1L, null, 50).items();
         
         // Assert
         assertEquals(2, result.size());
-        verify(sessionCache).put(1L, testSession);
-        verify(sessionCache).put(2L, testSession2);
+        verify(sessionCache).putAll(Map.of(1L, testSession, 2L, testSession2));
     }
     
     @Test
     void getUserSessions_UserNotFound_ShouldThrowException() {
         // Arrange
-        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        when(userRepository.existsById(1L)).thenReturn(false);
         
         // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> sessionService.getUserSessions(1L));
-        verify(sessionRepository, never()).findByUser(any());
+        assertThrows(ResourceNotFoundException.class, () -> sessionService.getUserSessions(1L, null, 50));
+        verify(sessionRepository, never()).findByUserIdAndIdGreaterThanOrderByIdAsc(anyLong(), anyLong(), any());
     }
     
     @Test
     void getUserSessions_NoSessions_ShouldReturnEmptyList() {
         // Arrange
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(sessionRepository.findByUser(testUser)).thenReturn(Collections.emptyList());
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(sessionRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(1L, 0L, Limit.of(51))).thenReturn(Collections.emptyList());
         
         // Act
-        List<Session> result = sessionService.getUserSessions(1L);
+        List<Session> result = sessionService.getUserSessions(1L, null, 50).items();
         
         // Assert
         assertTrue(result.isEmpty());
@@ -181,6 +279,76 @@ class SessionServiceTest {
         assertEquals(testSession, result);
         assertEquals(testUser, testSession.getUser());
         verify(sessionCache).put(1L, testSession);
+        verify(userCache).remove(1L);
+        verify(missingSessions).remove(1L);
+    }
+    
+    @Test
+    void createSessions_ShouldLookUpUserOnceAndSaveAllTogether() {
+        // Arrange
+        List<Session> sessions = Arrays.asList(testSession, testSession2);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(sessionRepository.saveAll(sessions)).thenAnswer(invocation -> {
+            // Присланные id сброшены, база выдаёт новые
+            assertNull(testSession.getId());
+            testSession.setId(10L);
+            testSession2.setId(11L);
+            return sessions;
+        });
+        
+        // Act
+        List<Session> result = sessionService.createSessions(1L, sessions);
+        
+        // Assert
+        assertEquals(2, result.size());
+        verify(userRepository, times(1)).findById(1L);
+        verify(sessionRepository, never()).save(any());
+        verify(sessionStore).putAll(sessions);
+        verify(sessionCache, never()).put(anyLong(), any());
+        verify(userCache).remove(1L);
+        verify(missingSessions).remove(10L);
+        verify(missingSessions).remove(11L);
+        verify(counters).sessionsAdded(1L, sessions);
+    }
+    
+    @Test
+    void createSessions_ShouldReadArchiveStateOncePerBatch() {
+        // Arrange
+        List<Session> sessions = Arrays.asList(testSession, testSession2);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(sessionRepository.saveAll(sessions)).thenAnswer(invocation -> {
+            testSession.setId(10L);
+            testSession2.setId(11L);
+            return sessions;
+        });
+        
+        // Act
+        sessionService.createSessions(1L, sessions);
+        
+        // Assert
+        verify(archive, times(1)).writableFrom();
+    }
+    
+    @Test
+    void createSessions_WhenOneStartFallsIntoArchivedMonth_ShouldSaveNothing() {
+        // Arrange
+        when(archive.writableFrom()).thenReturn(testSession2.getStartTime().plusMinutes(1));
+        
+        // Act & Assert
+        assertThrows(InvalidInputException.class,
+                () -> sessionService.createSessions(1L, Arrays.asList(testSession, testSession2)));
+        verify(sessionRepository, never()).saveAll(any());
+    }
+    
+    @Test
+    void createSessions_UserNotFound_ShouldThrowException() {
+        // Arrange
+        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class,
+                () -> sessionService.createSessions(1L, List.of(testSession)));
+        verify(sessionRepository, never()).saveAll(any());
     }
     
     @Test
@@ -203,22 +371,40 @@ class SessionServiceTest {
         
         // Assert
         verify(sessionCache).remove(1L);
+        verify(sessionStore).remove(1L);
         verify(sessionRepository).deleteById(1L);
     }
     
+    @Test
+    void deleteSession_ShouldInvalidateOwnerSnapshot() {
+        // Arrange
+        User owner = new User();
+        owner.setId(7L);
+        testSession.setUser(owner);
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(testSession));
+        
+        // Act
+        sessionService.deleteSession(1L);
+        
+        // Assert
+        verify(counters).sessionRemoved(7L, testSession);
+        verify(userCache).remove(7L);
+        verify(invalidationBus).publish(any(), eq(7L));
+        verify(invalidationBus).publish(any(), eq(1L));
+    }
+    
     @Test
     void findUserSessionsFromToday_UserExists_ShouldReturnSessionsAndCacheThem() {
         // Arrange
         when(userRepository.existsById(1L)).thenReturn(true);
         when(sessionRepository.findUserSessionsFromToday(1L)).thenReturn(Arrays.asList(testSession));
-        when(sessionCache.get(1L)).thenReturn(null);
         
         // Act
         List<Session> result = sessionService.findUserSessionsFromToday(1L);
         
         // Assert
         assertEquals(1, result.size());
-        verify(sessionCache).put(1L, testSession);
+        verify(sessionCache).putAll(Map.of(1L, testSession));
     }
     
     @Test
@@ -244,4 +430,77 @@ class SessionServiceTest {
         assertTrue(result.isEmpty());
         verify(sessionCache, never()).put(anyLong(), any());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void createSession_WhenStartFallsIntoArchivedMonth_ShouldThrowException() {
+        // Arrange
+        when(archive.writableFrom()).thenReturn(testSession.getStartTime().plusMinutes(1));
+        
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> sessionService.createSession(1L, testSession));
+        verify(sessionRepository, never()).save(any());
+    }
+    
+    @Test
+    void getUserSessionsBetween_WhenRangeIsHot_ShouldNotReadArchive() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2026, 9, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 10, 1, 0, 0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(archive.hotStart()).thenReturn(LocalDateTime.of(2024, 10, 1, 0, 0));
+        when(sessionRepository.findUserSessionsBetween(1L, from, to)).thenReturn(List.of(testSession));
+        
+        // Act
+        List<Session> result = sessionService.getUserSessionsBetween(1L, from, to);
+        
+        // Assert
+        assertEquals(List.of(testSession), result);
+        verify(archive, never()).read(anyLong(), any(), any());
+    }
+    
+    @Test
+    void getUserSessionsBetween_WhenRangeReachesArchive_ShouldUnionArchivedAndHot() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2024, 9, 1, 0, 0);
+        LocalDateTime hotStart = LocalDateTime.of(2024, 10, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 11, 1, 0, 0);
+        Session archived = new Session(7L, testUser);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(archive.hotStart()).thenReturn(hotStart);
+        when(archive.read(1L, from, hotStart)).thenReturn(List.of(archived));
+        when(sessionRepository.findUserSessionsBetween(1L, hotStart, to)).thenReturn(List.of(testSession));
+        
+        // Act
+        List<Session> result = sessionService.getUserSessionsBetween(1L, from, to);
+        
+        // Assert
+        assertEquals(List.of(archived, testSession), result);
+        verify(sessionCache, never()).putAll(argThat(sessions -> sessions.containsKey(7L)));
+    }
+    
+    @Test
+    void getUserSessionsBetween_WhenRangeIsArchivedOnly_ShouldNotQueryTable() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2023, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 2, 1, 0, 0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(archive.hotStart()).thenReturn(LocalDateTime.of(2024, 10, 1, 0, 0));
+        when(archive.read(1L, from, to)).thenReturn(List.of());
+        
+        // Act
+        sessionService.getUserSessionsBetween(1L, from, to);
+        
+        // Assert
+        verify(sessionRepository, never()).findUserSessionsBetween(anyLong(), any(), any());
+    }
+    
+    @Test
+    void getUserSessionsBetween_WhenRangeIsEmpty_ShouldThrowException() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2026, 9, 1, 0, 0);
+        
+        // Act & Assert
+        assertThrows(InvalidInputException.class,
+                () -> sessionService.getUserSessionsBetween(1L, from, from));
+    }
+}
@@ -1,7 +1,11 @@
 package org.healthysleep.service;
 
+import org.healthysleep.cache.InvalidationBus;
+import org.healthysleep.cache.OffHeapSessionStore;
+import org.healthysleep.cache.SessionCache;
 import org.healthysleep.cache.UserCache;
 import org.healthysleep.exception.DuplicateEmailException;
+import org.healthysleep.exception.InvalidInputException;
 import org.healthysleep.exception.ResourceNotFoundException;
 import org.healthysleep.model.Advice;
 import org.healthysleep.model.Session;
@@ -15,17 +19,24 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,6 +54,18 @@ class UserServiceTest {
     @Mock
     private UserCache userCache;
     
+    @Mock
+    private SessionCache sessionCache;
+    
+    @Mock
+    private OffHeapSessionStore sessionStore;
+    
+    @Mock
+    private InvalidationBus invalidationBus;
+    
+    @Mock
+    private AggregateCounterService counters;
+    
     @InjectMocks
     private UserService userService;
     
@@ -77,32 +100,59 @@ class UserServiceTest {
     void getAllUsers_ShouldReturnAllUsersAndCacheThem() {
         // Arrange
         List<User> users = Arrays.asList(testUser, testUser2);
-        when(userRepository.findAll()).thenReturn(users);
-        when(userCache.get(1L)).thenReturn(null);
-        when(userCache.get(2L)).thenReturn(null);
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(users);
         
         // Act
-        List<User> result = userService.getAllUsers();
+        List<User> result = userService.getAllUsers(null, 50).items();
         
         // Assert
         assertEquals(2, result.size());
-        verify(userCache, times(2)).put(anyLong(), any(User.class));
+        verify(userCache).putAll(Map.of(1L, testUser, 2L, testUser2));
+    }
+    
+    @Test
+    void getAllUsers_ShouldLoadCollectionsWithTwoQueriesForWholePage() {
+        // Arrange
+        List<User> users = Arrays.asList(testUser, testUser2);
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(users);
+        
+        // Act
+        userService.getAllUsers(null, 50);
+        
+        // Assert
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51));
+        verify(userRepository).fetchSleepAdvices(List.of(1L, 2L));
+        verify(userRepository).fetchSleepSessions(List.of(1L, 2L));
+        verifyNoMoreInteractions(userRepository);
+        verifyNoInteractions(adviceRepository, sessionRepository);
+    }
+    
+    @Test
+    void getAllUsers_WhenPageIsEmpty_ShouldNotFetchCollections() {
+        // Arrange
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(List.of());
+        
+        // Act
+        userService.getAllUsers(null, 50);
+        
+        // Assert
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51));
+        verifyNoMoreInteractions(userRepository);
     }
     
     @Test
     void getAllUsers_ShouldUseCachedUsersWhenAvailable() {
         // Arrange
         List<User> users = Arrays.asList(testUser, testUser2);
-        when(userRepository.findAll()).thenReturn(users);
-        when(userCache.get(1L)).thenReturn(testUser);
-        when(userCache.get(2L)).thenReturn(null);
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(users);
+        when(userCache.peekAll(any())).thenReturn(Map.of(1L, testUser));
         
         // Act
-        List<User> result = userService.getAllUsers();
+        List<User> result = userService.getAllUsers(null, 50).items();
         
         // Assert
         assertEquals(2, result.size());
-        verify(userCache, times(1)).put(2L, testUser2); // Only cache the uncached user
+        verify(userCache).putAll(Map.of(2L, testUser2)); // Only cache the uncached user
     }
     
     @Test
@@ -142,6 +192,74 @@ class UserServiceTest {
         assertThrows(ResourceNotFoundException.class, () -> userService.getUserById(1L));
     }
     
+    @Test
+    void getUserById_ShouldCacheDetachedSnapshotWithIds() {
+        // Arrange
+        when(userCache.get(1L)).thenReturn(null);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(adviceRepository.findIdsByUserId(1L)).thenReturn(List.of(10L, 11L));
+        when(sessionRepository.findIdsByUserId(1L)).thenReturn(List.of(20L));
+        
+        // Act
+        User result = userService.getUserById(1L);
+        
+        // Assert
+        assertNotSame(testUser, result);
+        assertEquals("testUser", result.getUsername());
+        assertEquals(2, result.getSleepAdvices().size());
+        assertTrue(result.getSleepAdvices().contains(new Advice(10L, "ignored", 1)));
+        assertEquals(1, result.getSleepSessions().size());
+        assertThrows(UnsupportedOperationException.class,
+                () -> result.getSleepAdvices().add(testAdvice));
+        verify(userCache).put(1L, result);
+    }
+    
+    @Test
+    void getUserById_ShouldUseAtMostThreeQueries() {
+        // Arrange
+        when(userCache.get(1L)).thenReturn(null);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        
+        // Act
+        userService.getUserById(1L);
+        
+        // Assert
+        verify(userRepository).findById(1L);
+        verify(adviceRepository).findIdsByUserId(1L);
+        verify(sessionRepository).findIdsByUserId(1L);
+        verifyNoMoreInteractions(userRepository, adviceRepository, sessionRepository);
+    }
+    
+    @Test
+    void addAdvicesToUser_ShouldInvalidateSnapshot() {
+        // Arrange
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(adviceRepository.findAllById(List.of(1L))).thenReturn(List.of(testAdvice));
+        when(userRepository.save(testUser)).thenReturn(testUser);
+        
+        // Act
+        userService.addAdvicesToUser(1L, List.of(1L));
+        
+        // Assert
+        verify(userCache).remove(1L);
+        verify(userCache, never()).put(anyLong(), any());
+    }
+    
+    @Test
+    void removeAdviceFromUser_ShouldInvalidateSnapshot() {
+        // Arrange
+        testUser.getSleepAdvices().add(testAdvice);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(adviceRepository.findById(1L)).thenReturn(Optional.of(testAdvice));
+        
+        // Act
+        userService.removeAdviceFromUser(1L, 1L);
+        
+        // Assert
+        assertFalse(testUser.getSleepAdvices().contains(testAdvice));
+        verify(userCache).remove(1L);
+    }
+    
     @Test
     void createUser_ShouldSaveAndCacheUser() {
         // Arrange
@@ -177,6 +295,43 @@ class UserServiceTest {
         // Assert
         verify(userCache).remove(1L);
         verify(userRepository).deleteById(1L);
+        verify(invalidationBus).publish(any(), eq(1L));
+    }
+    
+    @Test
+    void deleteUser_ShouldEvictUserSessionsEverywhere() {
+        // Arrange
+        when(sessionRepository.findIdsByUserId(1L)).thenReturn(List.of(10L, 11L));
+        when(sessionCache.getName()).thenReturn("SessionCache");
+        
+        // Act
+        userService.deleteUser(1L);
+        
+        // Assert
+        verify(sessionCache).remove(10L);
+        verify(sessionCache).remove(11L);
+        verify(sessionStore).remove(10L);
+        verify(sessionStore).remove(11L);
+        verify(invalidationBus).publish("SessionCache", 10L);
+        verify(invalidationBus).publish("SessionCache", 11L);
+    }
+    
+    @Test
+    void deleteUser_InTransaction_ShouldEvictUserSessionsAgainAfterCommit() {
+        // Arrange
+        when(sessionRepository.findIdsByUserId(1L)).thenReturn(List.of(10L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            userService.deleteUser(1L);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clear();
+        }
+        
+        // Assert
+        verify(sessionStore, times(2)).remove(10L);
     }
     
     @Test
@@ -197,6 +352,51 @@ class UserServiceTest {
         verify(userCache).put(1L, testUser);
     }
     
+    @Test
+    void updateUser_InTransaction_ShouldCacheSnapshotOnlyAfterCommit() {
+        // Arrange
+        User updatedUser = new User();
+        updatedUser.setUsername("newUsername");
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userRepository.save(testUser)).thenReturn(testUser);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            userService.updateUser(1L, updatedUser);
+            
+            // Assert
+            verify(userCache).remove(1L);
+            verify(userCache, never()).put(anyLong(), any());
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(TransactionSynchronization::afterCommit);
+            verify(userCache).put(1L, testUser);
+        } finally {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+    
+    @Test
+    void updateUser_WhenTransactionRollsBack_ShouldNotCacheSnapshot() {
+        // Arrange
+        User updatedUser = new User();
+        updatedUser.setUsername("newUsername");
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userRepository.save(testUser)).thenReturn(testUser);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            userService.updateUser(1L, updatedUser);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clear();
+        }
+        
+        // Assert
+        verify(userCache, never()).put(anyLong(), any());
+    }
+    
     @Test
     void updateUser_ShouldUpdateEmailWhenNotDuplicate() {
         // Arrange
@@ -234,7 +434,7 @@ class UserServiceTest {
         updatedUser.setSleepAdvices(new HashSet<>(Collections.singleton(testAdvice)));
         
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(adviceRepository.findById(1L)).thenReturn(Optional.of(testAdvice));
+        when(adviceRepository.findAllById(List.of(1L))).thenReturn(List.of(testAdvice));
         when(userRepository.save(testUser)).thenReturn(testUser);
         
         // Act
@@ -245,6 +445,30 @@ class UserServiceTest {
         assertTrue(result.getSleepAdvices().contains(testAdvice));
     }
     
+    @Test
+    void updateUser_ShouldLoadOnlyAddedAdvicesAndKeepUnchangedOnes() {
+        // Arrange
+        Advice kept = new Advice(2L, "Keep a regular sleep schedule", 8);
+        Advice dropped = new Advice(3L, "Avoid screens before bedtime", 8);
+        testUser.getSleepAdvices().addAll(List.of(kept, dropped));
+        User updatedUser = new User();
+        updatedUser.setSleepAdvices(new HashSet<>(List.of(new Advice(2L, null, 0), testAdvice)));
+        
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(adviceRepository.findAllById(List.of(1L))).thenReturn(List.of(testAdvice));
+        when(userRepository.save(testUser)).thenReturn(testUser);
+        
+        // Act
+        User result = userService.updateUser(1L, updatedUser);
+        
+        // Assert
+        assertEquals(Set.of(kept, testAdvice), result.getSleepAdvices());
+        verify(counters).adviceLinksAdded(List.of(1L));
+        verify(counters).adviceLinksRemoved(List.of(3L));
+        assertTrue(result.getSleepAdvices().stream().anyMatch(advice -> advice == kept));
+        verify(adviceRepository, never()).findById(anyLong());
+    }
+    
     @Test
     void updateUser_ShouldThrowResourceNotFoundExceptionWhenAdviceNotFound() {
         // Arrange
@@ -252,44 +476,42 @@ class UserServiceTest {
         updatedUser.setSleepAdvices(new HashSet<>(Collections.singleton(testAdvice)));
         
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(adviceRepository.findById(1L)).thenReturn(Optional.empty());
+        when(adviceRepository.findAllById(List.of(1L))).thenReturn(List.of());
         
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () -> userService.updateUser(1L, updatedUser));
     }
     
     @Test
-    void updateUser_ShouldUpdateSleepSessions() {
+    void updateUser_WhenSleepSessionsAreSent_ShouldThrowInvalidInputException() {
         // Arrange
         User updatedUser = new User();
         updatedUser.setSleepSessions(new HashSet<>(Collections.singleton(testSession)));
         
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(testSession));
-        when(userRepository.save(testUser)).thenReturn(testUser);
-        
-        // Act
-        User result = userService.updateUser(1L, updatedUser);
         
-        // Assert
-        assertEquals(1, result.getSleepSessions().size());
-        Session updatedSession = result.getSleepSessions().iterator().next();
-        assertNotNull(updatedSession.getStartTime());
-        assertNotNull(updatedSession.getEndTime());
-        assertTrue(updatedSession.getEndTime().isAfter(updatedSession.getStartTime()));
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> userService.updateUser(1L, updatedUser));
+        verify(userRepository, never()).save(any());
     }
     
     @Test
-    void updateUser_ShouldThrowResourceNotFoundExceptionWhenSessionNotFound() {
+    void updateUser_ShouldCacheSessionIdsFromTable() {
         // Arrange
+        testUser.setSleepSessions(new HashSet<>());
         User updatedUser = new User();
-        updatedUser.setSleepSessions(new HashSet<>(Collections.singleton(testSession)));
+        updatedUser.setUsername("newUsername");
         
         when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(sessionRepository.findById(1L)).thenReturn(Optional.empty());
+        when(userRepository.save(testUser)).thenReturn(testUser);
+        when(sessionRepository.findIdsByUserId(1L)).thenReturn(List.of(10L, 11L));
         
-        // Act & Assert
-        assertThrows(ResourceNotFoundException.class, () -> userService.updateUser(1L, updatedUser));
+        // Act
+        userService.updateUser(1L, updatedUser);
+        
+        // Assert
+        verify(userCache).put(eq(1L), argThat(snapshot -> snapshot.getSleepSessions().stream()
+                .map(Session::getId).collect(Collectors.toSet()).equals(Set.of(10L, 11L))));
     }
     
     @Test
@@ -304,57 +526,57 @@ class UserServiceTest {
     @Test
     void getUsersWithoutSessions_ShouldReturnUsersAndCacheThem() {
         // Arrange
-        when(userRepository.findUsersWithoutSessions()).thenReturn(Collections.singletonList(testUser));
-        when(userCache.get(1L)).thenReturn(null);
+        when(userRepository.findUsersWithoutSessions(0L, Limit.of(51))).thenReturn(Collections.singletonList(testUser));
         
         // Act
-        List<User> result = userService.getUsersWithoutSessions();
+        List<User> result = userService.getUsersWithoutSessions(null, 50).items();
         
         // Assert
         assertEquals(1, result.size());
-        verify(userCache).put(1L, testUser);
+        verify(userCache).putAll(Map.of(1L, testUser));
+        verify(userRepository).fetchSleepAdvices(List.of(1L));
+        verify(userRepository).fetchSleepSessions(List.of(1L));
     }
     
     @Test
     void getUsersWithoutSessions_ShouldUseCachedUsersWhenAvailable() {
         // Arrange
-        when(userRepository.findUsersWithoutSessions()).thenReturn(Collections.singletonList(testUser));
-        when(userCache.get(1L)).thenReturn(testUser);
+        when(userRepository.findUsersWithoutSessions(0L, Limit.of(51))).thenReturn(Collections.singletonList(testUser));
+        when(userCache.peekAll(any())).thenReturn(Map.of(1L, testUser));
         
         // Act
-        List<User> result = userService.getUsersWithoutSessions();
+        List<User> result = userService.getUsersWithoutSessions(null, 50).items();
         
         // Assert
         assertEquals(1, result.size());
-        verify(userCache, never()).put(1L, testUser);
+        verify(userCache, never()).putAll(any());
     }
     
     @Test
     void getUsersWithoutAdvices_ShouldReturnUsersAndCacheThem() {
         // Arrange
-        when(userRepository.findUsersWithoutAdvices()).thenReturn(Collections.singletonList(testUser));
-        when(userCache.get(1L)).thenReturn(null);
+        when(userRepository.findUsersWithoutAdvices(0L, Limit.of(51))).thenReturn(Collections.singletonList(testUser));
         
         // Act
-        List<User> result = userService.getUsersWithoutAdvices();
+        List<User> result = userService.getUsersWithoutAdvices(null, 50).items();
         
         // Assert
         assertEquals(1, result.size());
-        verify(userCache).put(1L, testUser);
+        verify(userCache).putAll(Map.of(1L, testUser));
     }
     
     @Test
     void getUsersWithoutAdvices_ShouldUseCachedUsersWhenAvailable() {
         // Arrange
-        when(userRepository.findUsersWithoutAdvices()).thenReturn(Collections.singletonList(testUser));
-        when(userCache.get(1L)).thenReturn(testUser);
+        when(userRepository.findUsersWithoutAdvices(0L, Limit.of(51))).thenReturn(Collections.singletonList(testUser));
+        when(userCache.peekAll(any())).thenReturn(Map.of(1L, testUser));
         
         // Act
-        List<User> result = userService.getUsersWithoutAdvices();
+        List<User> result = userService.getUsersWithoutAdvices(null, 50).items();
         
         // Assert
         assertEquals(1, result.size());
-        verify(userCache, never()).put(1L, testUser);
+        verify(userCache, never()).putAll(any());
     }
     
     @Test
@@ -438,30 +660,22 @@ class UserServiceTest {
     }
     
     @Test
-    void updateSleepSessions_ShouldNotUpdateWhenSessionsIsNull() {
+    void rejectSleepSessions_ShouldAcceptNullSessions() {
         // Arrange
         User newUser = new User();
         newUser.setSleepSessions(null);
-        testUser.setSleepSessions(new HashSet<>(Collections.singleton(testSession)));
-        
-        // Act
-        userService.updateSleepSessions(testUser, newUser);
         
-        // Assert
-        assertEquals(1, testUser.getSleepSessions().size());
+        // Act & Assert
+        assertDoesNotThrow(() -> userService.rejectSleepSessions(newUser));
     }
     
     @Test
-    void updateSleepSessions_ShouldNotUpdateWhenSessionsIsEmpty() {
+    void rejectSleepSessions_ShouldAcceptEmptySessions() {
         // Arrange
         User newUser = new User();
         newUser.setSleepSessions(new HashSet<>(Collections.emptyList()));
-        testUser.setSleepSessions(new HashSet<>(Collections.singleton(testSession)));
         
-        // Act
-        userService.updateSleepSessions(testUser, newUser);
-        
-        // Assert
-        assertEquals(1, testUser.getSleepSessions().size());
+        // Act & Assert
+        assertDoesNotThrow(() -> userService.rejectSleepSessions(newUser));
     }
-}
\ No newline at end of file
+}